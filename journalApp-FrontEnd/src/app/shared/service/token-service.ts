@@ -168,16 +168,19 @@ export class TokenService {
       // Request body: { token: refreshToken }
       this.http.post(`${this.baseUrl}/public/refresh-token`, {
         token: refreshToken
-      }, { headers, responseType: 'text' }).subscribe({
+      }, { headers }).subscribe({
         next: (response: any) => {
           console.log('[TokenService] Token refresh response received');
           
           let newToken = null;
           
-          // Handle direct string JWT token response
-          if (typeof response === 'string' && response.length > 20) {
-            newToken = response.trim();
-            console.log('[TokenService] ├── JWT token received as string response');
+          // Response: { jwt, refreshToken, tokenType }, the refresh token is rotated on every use
+          if (response && response.jwt) {
+            newToken = response.jwt;
+            console.log('[TokenService] ├── JWT token received');
+          }
+          if (response && response.refreshToken) {
+            this.setRefreshToken(response.refreshToken);
           }
           
           if (newToken) {
@@ -343,17 +346,20 @@ export class TokenService {
       
       this.http.post(`${this.baseUrl}/public/refresh-token`, {
         token: refreshToken
-      }, { headers, responseType: 'text' }).subscribe({
+      }, { headers }).subscribe({
         next: (response: any) => {
           console.log('[TokenService] Token refresh response received');
           
           let newToken = null;
           
-          // Handle direct string JWT token response
-          if (typeof response === 'string' && response.length > 20) {
-            newToken = response.trim();
+          // Response: { jwt, refreshToken, tokenType }, the refresh token is rotated on every use
+          if (response && response.jwt) {
+            newToken = response.jwt;
             console.log('[TokenService] New JWT token received successfully');
           }
+          if (response && response.refreshToken) {
+            this.setRefreshToken(response.refreshToken);
+          }
           
           if (newToken) {
             // Update the token seamlessly
@@ -0,0 +1,60 @@
+package com.learnpr1.journalApp.bench;
+
+import com.learnpr1.journalApp.Cache.VerifiedTokenCache;
+import com.learnpr1.journalApp.entity.AudioStatus;
+import com.learnpr1.journalApp.entity.AuthenticatedUser;
+import com.learnpr1.journalApp.entity.JournalEntry;
+import com.learnpr1.journalApp.utils.JwtUtil;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.types.ObjectId;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+// Builds the objects under test the way Spring would, without starting the app
+final class BenchFixtures {
+
+    static final String SECRET = "benchmark-secret-key-that-is-long-enough-for-hs256";
+
+    private BenchFixtures() {
+    }
+
+    static JwtUtil jwtUtil(int tokenCacheSize) {
+        JwtUtil jwtUtil = new JwtUtil();
+        ReflectionTestUtils.setField(jwtUtil, "SECRET_KEY", SECRET);
+        ReflectionTestUtils.setField(jwtUtil, "verifiedTokenCache", new VerifiedTokenCache(tokenCacheSize));
+        ReflectionTestUtils.setField(jwtUtil, "meterRegistry", new SimpleMeterRegistry());
+        jwtUtil.init();
+        return jwtUtil;
+    }
+
+    static AuthenticatedUser user() {
+        return new AuthenticatedUser(new ObjectId(), "bench-user", "", List.of("User"));
+    }
+
+    //Entries shaped like real ones, content of a few hundred characters
+    static List<JournalEntry> entries(int count, boolean withAudio) {
+        List<JournalEntry> entries = new ArrayList<>(count);
+        ObjectId ownerId = new ObjectId();
+        for (int i = 0; i < count; i++) {
+            JournalEntry entry = new JournalEntry();
+            entry.setId(new ObjectId());
+            entry.setOwnerId(ownerId);
+            entry.setTitle("Entry number " + i);
+            entry.setContent(("Today I wrote about item " + i + ". ").repeat(12));
+            entry.setDate(LocalDateTime.of(2025, 1, 1, 9, 0).plusHours(i));
+            if (withAudio) {
+                entry.setAudioRef("audio-" + i);
+                entry.setAudioLength(480_000L + i);
+                entry.setAudioHash("0".repeat(64));
+                entry.setAudioStatus(AudioStatus.READY);
+            } else {
+                entry.setAudioStatus(AudioStatus.NONE);
+            }
+            entries.add(entry);
+        }
+        return entries;
+    }
+}
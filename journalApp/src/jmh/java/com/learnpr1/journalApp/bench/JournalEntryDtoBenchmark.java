@@ -0,0 +1,57 @@
+package com.learnpr1.journalApp.bench;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learnpr1.journalApp.entity.JournalEntry;
+import com.learnpr1.journalApp.entity.JournalEntryDTO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// What getAllJournalEntries does after the query: map the entries to DTOs and write them as JSON
+// The ObjectMapper is built like Spring Boot builds it (java time module, no timestamps for dates)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JournalEntryDtoBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int entries;
+
+    @Param({"false", "true"})
+    public boolean withAudio;
+
+    private List<JournalEntry> journalEntries;
+    private List<JournalEntryDTO> dtos;
+    private ObjectMapper objectMapper;
+
+    @Setup
+    public void setup() {
+        journalEntries = BenchFixtures.entries(entries, withAudio);
+        dtos = journalEntries.stream().map(JournalEntryDTO::new).toList();
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    }
+
+    @Benchmark
+    public List<JournalEntryDTO> mapToDto() {
+        return journalEntries.stream().map(JournalEntryDTO::new).toList();
+    }
+
+    @Benchmark
+    public byte[] serialize() throws Exception {
+        return objectMapper.writeValueAsBytes(dtos);
+    }
+
+    @Benchmark
+    public byte[] mapAndSerialize() throws Exception {
+        return objectMapper.writeValueAsBytes(journalEntries.stream().map(JournalEntryDTO::new).toList());
+    }
+}
@@ -0,0 +1,56 @@
+package com.learnpr1.journalApp.bench;
+
+import com.learnpr1.journalApp.entity.AuthenticatedUser;
+import com.learnpr1.journalApp.utils.JwtUtil;
+import io.jsonwebtoken.Claims;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+// Access token generation and verification
+// parseUncached has a cache of size 0, so every call checks the signature like a first request with a token
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JwtBenchmark {
+
+    private JwtUtil cachedJwtUtil;
+    private JwtUtil uncachedJwtUtil;
+    private AuthenticatedUser user;
+    private String token;
+
+    @Setup
+    public void setup() {
+        cachedJwtUtil = BenchFixtures.jwtUtil(10_000);
+        uncachedJwtUtil = BenchFixtures.jwtUtil(0);
+        user = BenchFixtures.user();
+        token = cachedJwtUtil.generateToken(user);
+        cachedJwtUtil.parseVerified(token);
+    }
+
+    @Benchmark
+    public String generate() {
+        return cachedJwtUtil.generateToken(user);
+    }
+
+    @Benchmark
+    public Claims parseUncached() {
+        return uncachedJwtUtil.parseVerified(token);
+    }
+
+    @Benchmark
+    public Claims parseCached() {
+        return cachedJwtUtil.parseVerified(token);
+    }
+
+    @Benchmark
+    public AuthenticatedUser parseToPrincipal() {
+        return cachedJwtUtil.toPrincipal(cachedJwtUtil.parseVerified(token));
+    }
+}
@@ -0,0 +1,55 @@
+package com.learnpr1.journalApp.bench;
+
+import com.learnpr1.journalApp.filter.JwtFilter;
+import com.learnpr1.journalApp.utils.JwtUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+
+// One request through the JwtFilter in stateless mode: header read, token verified, principal put in the context
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JwtFilterBenchmark {
+
+    //0 means every request verifies the signature again
+    @Param({"0", "10000"})
+    public int tokenCacheSize;
+
+    private JwtFilter jwtFilter;
+    private String authorization;
+
+    @Setup
+    public void setup() {
+        JwtUtil jwtUtil = BenchFixtures.jwtUtil(tokenCacheSize);
+        jwtFilter = new JwtFilter();
+        ReflectionTestUtils.setField(jwtFilter, "jwtUtil", jwtUtil);
+        ReflectionTestUtils.setField(jwtFilter, "stateless", true);
+        authorization = "Bearer " + jwtUtil.generateToken(BenchFixtures.user());
+    }
+
+    @Benchmark
+    public Authentication filter() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/journal");
+        request.addHeader("Authorization", authorization);
+        try {
+            jwtFilter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+            return SecurityContextHolder.getContext().getAuthentication();
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.learnpr1.journalApp.loadtest;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import de.flapdoodle.embed.mongo.commands.MongodArguments;
+import de.flapdoodle.embed.mongo.commands.ServerAddress;
+import de.flapdoodle.embed.mongo.config.Storage;
+import de.flapdoodle.embed.mongo.distribution.Version;
+import de.flapdoodle.embed.mongo.transitions.Mongod;
+import de.flapdoodle.embed.mongo.transitions.RunningMongodProcess;
+import de.flapdoodle.reverse.TransitionWalker;
+import de.flapdoodle.reverse.transitions.Start;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+
+import java.util.List;
+
+// A mongod started by flapdoodle (the binary is downloaded once and cached in ~/.embedmongo), no docker needed
+// It runs as a single node replica set because saving an entry is transactional and AppCache watches a change stream
+@Slf4j
+final class EmbeddedMongo implements AutoCloseable {
+
+    private static final String REPLICA_SET = "rs0";
+
+    private final TransitionWalker.ReachedState<RunningMongodProcess> running;
+    private final String hostAndPort;
+
+    private EmbeddedMongo(TransitionWalker.ReachedState<RunningMongodProcess> running, String hostAndPort) {
+        this.running = running;
+        this.hostAndPort = hostAndPort;
+    }
+
+    static EmbeddedMongo start(String version) {
+        MongodArguments arguments = MongodArguments.defaults()
+                .withUseNoJournal(false)
+                .withReplication(Storage.of(REPLICA_SET, 0));
+        TransitionWalker.ReachedState<RunningMongodProcess> running = Mongod.instance()
+                .withMongodArguments(Start.to(MongodArguments.class).initializedWith(arguments))
+                .start(Version.Main.valueOf("V" + majorMinor(version)));
+
+        ServerAddress address = running.current().getServerAddress();
+        String hostAndPort = address.getHost() + ":" + address.getPort();
+        initiateReplicaSet(hostAndPort);
+        log.info("Embedded mongo {} is up on {}", version, hostAndPort);
+        return new EmbeddedMongo(running, hostAndPort);
+    }
+
+    String getConnectionString() {
+        return connectionString("journal_loadtest");
+    }
+
+    //Runs that must not see each other's data each get their own database
+    String connectionString(String database) {
+        return "mongodb://" + hostAndPort + "/" + database + "?replicaSet=" + REPLICA_SET;
+    }
+
+    //replSetInitiate, then wait till the node has elected itself primary
+    private static void initiateReplicaSet(String hostAndPort) {
+        try (MongoClient client = MongoClients.create("mongodb://" + hostAndPort + "/?directConnection=true")) {
+            client.getDatabase("admin").runCommand(new Document("replSetInitiate", new Document("_id", REPLICA_SET)
+                    .append("members", List.of(new Document("_id", 0).append("host", hostAndPort)))));
+            long deadline = System.currentTimeMillis() + 30_000;
+            while (!Boolean.TRUE.equals(client.getDatabase("admin").runCommand(new Document("hello", 1)).getBoolean("isWritablePrimary"))) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw new IllegalStateException("Embedded mongo did not become primary");
+                }
+                Thread.sleep(100);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while starting embedded mongo", e);
+        }
+    }
+
+    // "7.0" -> "7_0", the names of Version.Main
+    private static String majorMinor(String version) {
+        String[] parts = version.split("\\.");
+        return parts[0] + "_" + parts[1];
+    }
+
+    @Override
+    public void close() {
+        running.close();
+    }
+}
@@ -0,0 +1,119 @@
+package com.learnpr1.journalApp.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learnpr1.journalApp.Cache.AppCache;
+import com.learnpr1.journalApp.entity.ConfigJournalAppEntity;
+import com.learnpr1.journalApp.repositary.ConfigJournalAppRepo;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Boots the whole app on a random port against EmbeddedMongo and VendorStubs and puts LoadDriver's mix on it
+// Only runs in the loadtest profile (mvn -Ploadtest verify), the settings come from the loadtest.* properties in the pom
+// Fails when more than loadtest.max-error-ratio of all the calls were not a 2xx
+@Slf4j
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "jwt.secret.key=load-test-secret-key-that-is-long-enough-for-hs256",
+        "weather.api.key=load-test",
+        "speechify.api.key=load-test",
+        // every virtual user comes from 127.0.0.1, the per ip login limit would stop the run after a few users
+        "security.login.per-ip-per-minute=1000000"
+})
+class JournalLoadTest {
+
+    private static EmbeddedMongo mongo;
+    private static VendorStubs vendorStubs;
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private ConfigJournalAppRepo configJournalAppRepo;
+
+    @Autowired
+    private AppCache appCache;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @DynamicPropertySource
+    static void backends(DynamicPropertyRegistry registry) throws IOException {
+        mongo = EmbeddedMongo.start(setting("loadtest.mongo-version", "7.0"));
+        Runtime.getRuntime().addShutdownHook(new Thread(mongo::close));
+        vendorStubs = new VendorStubs(
+                Long.parseLong(setting("loadtest.speechify-latency-ms", "800")),
+                Long.parseLong(setting("loadtest.weather-latency-ms", "300")));
+        registry.add("spring.data.mongodb.uri", mongo::getConnectionString);
+        registry.add("speechify.api.url", vendorStubs::speechifyUrl);
+        registry.add("spring.threads.virtual.enabled", () -> setting("loadtest.virtual-threads", "false"));
+    }
+
+    @AfterAll
+    static void stopStubs() {
+        if (vendorStubs != null) {
+            vendorStubs.close();
+        }
+    }
+
+    @Test
+    void mixedTraffic() throws Exception {
+        // the weather api url is config in mongo, not a property
+        ConfigJournalAppEntity weatherApi = new ConfigJournalAppEntity();
+        weatherApi.setKey("WeatherApi");
+        weatherApi.setValue(vendorStubs.weatherUrl());
+        configJournalAppRepo.save(weatherApi);
+        appCache.reload();
+
+        LoadDriver.Settings settings = new LoadDriver.Settings(
+                Integer.parseInt(setting("loadtest.users", "50")),
+                Duration.ofSeconds(Long.parseLong(setting("loadtest.duration-s", "60"))),
+                Duration.ofSeconds(Long.parseLong(setting("loadtest.ramp-up-s", "10"))),
+                Long.parseLong(setting("loadtest.think-time-ms", "100")));
+        log.info("Load test: {} users for {}s against port {}", settings.users(), settings.duration().toSeconds(), port);
+
+        long start = System.nanoTime();
+        LatencyStats stats = new LoadDriver("http://127.0.0.1:" + port, settings, objectMapper).run();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        log.info("Load test results:{}", LoadReport.table(stats, seconds));
+        LoadReport.write(objectMapper, report(settings, stats, seconds), setting("loadtest.report", "target/loadtest-report.json"));
+
+        double errorRatio = stats.totalCount() == 0 ? 1.0 : (double) stats.totalErrors() / stats.totalCount();
+        double maxErrorRatio = Double.parseDouble(setting("loadtest.max-error-ratio", "0.01"));
+        assertTrue(stats.totalCount() > 0, "no request was made");
+        assertTrue(errorRatio <= maxErrorRatio, "error ratio " + errorRatio + " is above " + maxErrorRatio);
+    }
+
+    private Map<String, Object> report(LoadDriver.Settings settings, LatencyStats stats, double seconds) {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("virtualThreads", Boolean.parseBoolean(setting("loadtest.virtual-threads", "false")));
+        report.put("users", settings.users());
+        report.put("durationSeconds", seconds);
+        report.put("thinkTimeMs", settings.thinkTimeMs());
+        report.put("speechifyLatencyMs", Long.parseLong(setting("loadtest.speechify-latency-ms", "800")));
+        report.put("weatherLatencyMs", Long.parseLong(setting("loadtest.weather-latency-ms", "300")));
+        report.put("requests", stats.totalCount());
+        report.put("errors", stats.totalErrors());
+        report.put("throughputPerSec", stats.totalCount() / seconds);
+        report.put("speechifyCalls", vendorStubs.getSpeechifyCalls());
+        report.put("weatherCalls", vendorStubs.getWeatherCalls());
+        report.put("endpoints", LoadReport.endpoints(stats, seconds));
+        return report;
+    }
+
+    private static String setting(String name, String defaultValue) {
+        return System.getProperty(name, defaultValue);
+    }
+}
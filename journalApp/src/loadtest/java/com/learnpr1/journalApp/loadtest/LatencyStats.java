@@ -0,0 +1,92 @@
+package com.learnpr1.journalApp.loadtest;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Latencies per endpoint for one virtual user, so recording never needs a lock
+// The load driver merges the users' stats once the run is over
+final class LatencyStats {
+
+    //Every latency of one endpoint in micros, plus how many calls failed
+    static final class Samples {
+        private long[] micros = new long[256];
+        private int count;
+        private long errors;
+
+        void add(long latencyMicros, boolean error) {
+            if (count == micros.length) {
+                micros = Arrays.copyOf(micros, count * 2);
+            }
+            micros[count++] = latencyMicros;
+            if (error) {
+                errors++;
+            }
+        }
+
+        void addAll(Samples other) {
+            if (count + other.count > micros.length) {
+                micros = Arrays.copyOf(micros, Math.max(micros.length * 2, count + other.count));
+            }
+            System.arraycopy(other.micros, 0, micros, count, other.count);
+            count += other.count;
+            errors += other.errors;
+        }
+
+        int getCount() {
+            return count;
+        }
+
+        long getErrors() {
+            return errors;
+        }
+
+        //p50, p90, p99 and max in ms, sorts the samples
+        Map<String, Object> summary(double durationSeconds) {
+            long[] sorted = Arrays.copyOf(micros, count);
+            Arrays.sort(sorted);
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("count", count);
+            summary.put("errors", errors);
+            summary.put("throughputPerSec", durationSeconds > 0 ? count / durationSeconds : 0.0);
+            summary.put("p50Ms", percentile(sorted, 0.50));
+            summary.put("p90Ms", percentile(sorted, 0.90));
+            summary.put("p99Ms", percentile(sorted, 0.99));
+            summary.put("maxMs", count == 0 ? 0.0 : sorted[count - 1] / 1000.0);
+            return summary;
+        }
+
+        private static double percentile(long[] sorted, double quantile) {
+            if (sorted.length == 0) {
+                return 0.0;
+            }
+            int index = (int) Math.ceil(quantile * sorted.length) - 1;
+            return sorted[Math.max(0, index)] / 1000.0;
+        }
+    }
+
+    // endpoint is a route like "GET /journal/id/{id}", never the real id, so there is one row per endpoint
+    private final Map<String, Samples> byEndpoint = new TreeMap<>();
+
+    void record(String endpoint, long latencyNanos, boolean error) {
+        byEndpoint.computeIfAbsent(endpoint, key -> new Samples()).add(latencyNanos / 1000, error);
+    }
+
+    void merge(LatencyStats other) {
+        other.byEndpoint.forEach((endpoint, samples) ->
+                byEndpoint.computeIfAbsent(endpoint, key -> new Samples()).addAll(samples));
+    }
+
+    Map<String, Samples> getByEndpoint() {
+        return byEndpoint;
+    }
+
+    long totalCount() {
+        return byEndpoint.values().stream().mapToLong(Samples::getCount).sum();
+    }
+
+    long totalErrors() {
+        return byEndpoint.values().stream().mapToLong(Samples::getErrors).sum();
+    }
+}
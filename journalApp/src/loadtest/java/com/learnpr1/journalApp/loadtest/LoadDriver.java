@@ -0,0 +1,259 @@
+package com.learnpr1.journalApp.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Virtual users against a running app, each on its own virtual thread
+// A user signs up and logs in once, then loops over the mix below till the run is over
+//   30% GET /journal/page     15% GET /journal/id/{id}     10% GET /journal
+//   20% POST /journal         10% PUT /journal/id/{id}      5% DELETE /journal/id/{id}
+//   10% GET /user (weather)
+// Anything that is not a 2xx counts as an error for its endpoint
+// The /journal calls can go to another base url than /public and /user, e.g. the reactive tier's port,
+// and the weather share can be left out so only the journal endpoints are measured
+@Slf4j
+final class LoadDriver {
+
+    record Settings(int users, Duration duration, Duration rampUp, long thinkTimeMs) {
+    }
+
+    private record Action(String name, int weight) {
+    }
+
+    private static final List<Action> MIX = List.of(
+            new Action("page", 30),
+            new Action("get", 15),
+            new Action("listAll", 10),
+            new Action("create", 20),
+            new Action("update", 10),
+            new Action("delete", 5),
+            new Action("weather", 10));
+
+    private final String baseUrl;
+    private final String journalBaseUrl;
+    private final List<Action> mix;
+    private final int totalWeight;
+    private final Settings settings;
+    private final ObjectMapper objectMapper;
+    private final HttpClient httpClient;
+    private final String runId = Long.toString(System.currentTimeMillis(), 36);
+
+    LoadDriver(String baseUrl, Settings settings, ObjectMapper objectMapper) {
+        this(baseUrl, baseUrl, true, settings, objectMapper);
+    }
+
+    LoadDriver(String baseUrl, String journalBaseUrl, boolean includeWeather, Settings settings, ObjectMapper objectMapper) {
+        this.baseUrl = baseUrl;
+        this.journalBaseUrl = journalBaseUrl;
+        this.mix = includeWeather ? MIX : MIX.stream().filter(action -> !action.name().equals("weather")).toList();
+        this.totalWeight = mix.stream().mapToInt(Action::weight).sum();
+        this.settings = settings;
+        this.objectMapper = objectMapper;
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(5))
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+    }
+
+    //Runs every user till the end of the run and returns their merged stats
+    LatencyStats run() throws Exception {
+        long start = System.nanoTime();
+        long end = start + settings.duration().toNanos();
+        long rampStepNanos = settings.users() > 1 ? settings.rampUp().toNanos() / (settings.users() - 1) : 0;
+
+        List<Future<LatencyStats>> results = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < settings.users(); i++) {
+                long startAt = start + i * rampStepNanos;
+                int user = i;
+                results.add(executor.submit(() -> new VirtualUser(user, startAt, end).call()));
+            }
+        }
+        LatencyStats merged = new LatencyStats();
+        for (Future<LatencyStats> result : results) {
+            merged.merge(result.get());
+        }
+        return merged;
+    }
+
+    private final class VirtualUser {
+
+        private final String username;
+        private final String password = "load-test-password";
+        private final long startAt;
+        private final long end;
+        private final LatencyStats stats = new LatencyStats();
+        private final List<String> knownIds = new ArrayList<>();
+        private String jwt;
+        private int written;
+
+        VirtualUser(int index, long startAt, long end) {
+            this.username = "lt-" + runId + "-" + index;
+            this.startAt = startAt;
+            this.end = end;
+        }
+
+        LatencyStats call() throws InterruptedException {
+            sleepNanos(startAt - System.nanoTime());
+            Map<String, String> credentials = Map.of("username", username, "password", password);
+            if (send("POST /public/signup", post("/public/signup", credentials).build()) == null || !login()) {
+                return stats;
+            }
+            while (System.nanoTime() < end) {
+                switch (pick()) {
+                    case "page" -> page();
+                    case "get" -> {
+                        if (knownIds.isEmpty()) page();
+                        else send("GET /journal/id/{id}", authorized(get("/journal/id/" + anyKnownId())));
+                    }
+                    case "listAll" -> send("GET /journal", authorized(get("/journal")));
+                    case "create" -> send("POST /journal", authorized(post("/journal", entry())));
+                    case "update" -> {
+                        if (knownIds.isEmpty()) page();
+                        else send("PUT /journal/id/{id}", authorized(put("/journal/id/" + anyKnownId(), entry())));
+                    }
+                    case "delete" -> {
+                        if (knownIds.isEmpty()) page();
+                        else send("DELETE /journal/id/{id}", authorized(delete("/journal/id/" + knownIds.removeLast())));
+                    }
+                    default -> send("GET /user", authorized(get("/user")));
+                }
+                if (settings.thinkTimeMs() > 0) {
+                    Thread.sleep(ThreadLocalRandom.current().nextLong(settings.thinkTimeMs() * 2));
+                }
+            }
+            return stats;
+        }
+
+        private boolean login() {
+            HttpResponse<byte[]> response = send("POST /public/login",
+                    post("/public/login", Map.of("username", username, "password", password)).build());
+            if (response == null) {
+                return false;
+            }
+            jwt = readTree(response).path("jwt").asText(null);
+            return jwt != null;
+        }
+
+        //The first page of the listing, the ids on it are the ones the user reads, updates and deletes
+        private void page() {
+            HttpResponse<byte[]> response = send("GET /journal/page", authorized(get("/journal/page?size=20")));
+            if (response == null) {
+                return;
+            }
+            knownIds.clear();
+            for (JsonNode entry : readTree(response).path("entries")) {
+                knownIds.add(entry.path("id").asText());
+            }
+        }
+
+        private String pick() {
+            int roll = ThreadLocalRandom.current().nextInt(totalWeight);
+            for (Action action : mix) {
+                roll -= action.weight();
+                if (roll < 0) {
+                    return action.name();
+                }
+            }
+            return mix.getLast().name();
+        }
+
+        private String anyKnownId() {
+            return knownIds.get(ThreadLocalRandom.current().nextInt(knownIds.size()));
+        }
+
+        private Map<String, String> entry() {
+            written++;
+            return Map.of(
+                    "title", "Day " + written + " of " + username,
+                    "content", ("Wrote a few lines about the load test, entry " + written + ". ").repeat(6));
+        }
+
+        //Returns the response if it was a 2xx, otherwise null, the latency is recorded either way
+        private HttpResponse<byte[]> send(String endpoint, HttpRequest request) {
+            long start = System.nanoTime();
+            try {
+                HttpResponse<byte[]> response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+                boolean ok = response.statusCode() / 100 == 2;
+                stats.record(endpoint, System.nanoTime() - start, !ok);
+                if (!ok) {
+                    log.debug("{} answered {}", endpoint, response.statusCode());
+                }
+                return ok ? response : null;
+            } catch (IOException e) {
+                stats.record(endpoint, System.nanoTime() - start, true);
+                log.debug("{} failed: {}", endpoint, e.getMessage());
+                return null;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+
+        private HttpRequest authorized(HttpRequest.Builder builder) {
+            return builder.header("Authorization", "Bearer " + jwt).build();
+        }
+
+        private HttpRequest.Builder post(String path, Object body) {
+            return json(path).POST(HttpRequest.BodyPublishers.ofByteArray(toJson(body)));
+        }
+
+        private HttpRequest.Builder put(String path, Object body) {
+            return json(path).PUT(HttpRequest.BodyPublishers.ofByteArray(toJson(body)));
+        }
+
+        private HttpRequest.Builder get(String path) {
+            return request(path).GET();
+        }
+
+        private HttpRequest.Builder delete(String path) {
+            return request(path).DELETE();
+        }
+
+        private HttpRequest.Builder json(String path) {
+            return request(path).header("Content-Type", "application/json");
+        }
+    }
+
+    private HttpRequest.Builder request(String path) {
+        String base = path.startsWith("/journal") ? journalBaseUrl : baseUrl;
+        return HttpRequest.newBuilder(URI.create(base + path)).timeout(Duration.ofSeconds(30));
+    }
+
+    private byte[] toJson(Object body) {
+        try {
+            return objectMapper.writeValueAsBytes(body);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private JsonNode readTree(HttpResponse<byte[]> response) {
+        try {
+            return objectMapper.readTree(response.body());
+        } catch (IOException e) {
+            return objectMapper.missingNode();
+        }
+    }
+
+    private static void sleepNanos(long nanos) throws InterruptedException {
+        if (nanos > 0) {
+            Thread.sleep(Duration.ofNanos(nanos));
+        }
+    }
+}
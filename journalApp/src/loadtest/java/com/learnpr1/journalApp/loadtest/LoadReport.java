@@ -0,0 +1,76 @@
+package com.learnpr1.journalApp.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Turns LatencyStats into the printed table and the json report of a run
+@Slf4j
+final class LoadReport {
+
+    private LoadReport() {
+    }
+
+    //endpoint -> count, errors, throughput and percentiles
+    static Map<String, Object> endpoints(LatencyStats stats, double seconds) {
+        Map<String, Object> endpoints = new LinkedHashMap<>();
+        stats.getByEndpoint().forEach((endpoint, samples) -> endpoints.put(endpoint, samples.summary(seconds)));
+        return endpoints;
+    }
+
+    static String table(LatencyStats stats, double seconds) {
+        StringBuilder table = new StringBuilder(String.format("%n%-26s %8s %7s %9s %9s %9s %9s %9s%n",
+                "endpoint", "count", "errors", "req/s", "p50 ms", "p90 ms", "p99 ms", "max ms"));
+        stats.getByEndpoint().forEach((endpoint, samples) -> {
+            Map<String, Object> row = samples.summary(seconds);
+            table.append(String.format("%-26s %8d %7d %9.1f %9.1f %9.1f %9.1f %9.1f%n", endpoint,
+                    row.get("count"), row.get("errors"), row.get("throughputPerSec"),
+                    row.get("p50Ms"), row.get("p90Ms"), row.get("p99Ms"), row.get("maxMs")));
+        });
+        table.append(String.format("%-26s %8d %7d %9.1f%n", "total",
+                stats.totalCount(), stats.totalErrors(), stats.totalCount() / seconds));
+        return table.toString();
+    }
+
+    //Two runs side by side per endpoint, plus their total throughput and peak platform threads
+    //The maps are keyed by run name, in the order the columns are printed, runs holds each run's json report
+    @SuppressWarnings("unchecked")
+    static String comparison(Map<String, LatencyStats> statsByRun, Map<String, Double> secondsByRun, Map<String, Object> runs) {
+        List<String> names = List.copyOf(statsByRun.keySet());
+        StringBuilder table = new StringBuilder(String.format("%n%-26s %29s   %29s%n%-26s %9s %9s %9s   %9s %9s %9s%n",
+                "", names.get(0), names.get(1), "endpoint", "req/s", "p50 ms", "p99 ms", "req/s", "p50 ms", "p99 ms"));
+        for (String endpoint : statsByRun.get(names.get(0)).getByEndpoint().keySet()) {
+            table.append(String.format("%-26s", endpoint));
+            for (String name : names) {
+                LatencyStats.Samples samples = statsByRun.get(name).getByEndpoint().get(endpoint);
+                if (samples == null) {
+                    table.append(String.format(" %9s %9s %9s  ", "-", "-", "-"));
+                    continue;
+                }
+                Map<String, Object> row = samples.summary(secondsByRun.get(name));
+                table.append(String.format(" %9.1f %9.1f %9.1f  ", row.get("throughputPerSec"), row.get("p50Ms"), row.get("p99Ms")));
+            }
+            table.append(String.format("%n"));
+        }
+        Map<String, Object> first = (Map<String, Object>) runs.get(names.get(0));
+        Map<String, Object> second = (Map<String, Object>) runs.get(names.get(1));
+        table.append(String.format("%-26s %9.1f %19s   %9.1f%n", "total req/s",
+                first.get("throughputPerSec"), "", second.get("throughputPerSec")));
+        table.append(String.format("%-26s %9s %19s   %9s%n", "peak platform threads",
+                first.get("peakPlatformThreads"), "", second.get("peakPlatformThreads")));
+        return table.toString();
+    }
+
+    static void write(ObjectMapper objectMapper, Map<String, Object> report, String file) throws IOException {
+        Path reportFile = Path.of(file);
+        Files.createDirectories(reportFile.toAbsolutePath().getParent());
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(reportFile.toFile(), report);
+        log.info("Load test report written to {}", reportFile.toAbsolutePath());
+    }
+}
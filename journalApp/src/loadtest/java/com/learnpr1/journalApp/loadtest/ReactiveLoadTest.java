@@ -0,0 +1,112 @@
+package com.learnpr1.journalApp.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learnpr1.journalApp.JournalApplication;
+import com.learnpr1.journalApp.reactive.ReactiveJournalServer;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// The journal endpoints of the reactive tier (netty) against the same endpoints on tomcat, in one app on one database
+// Journal only mix (no weather), many users with little think time, so the number of open connections is what differs
+// The reactive run goes first, then the servlet one, each with its own users, login always goes through tomcat
+// bcrypt runs at cost 4 with a queue as long as the user count, so the signup burst measures the journal api, not hashing
+// Fails when more than loadtest.max-error-ratio of the calls of either run were not a 2xx
+// mvn -Ploadtest verify -Dtest=ReactiveLoadTest [-Dloadtest.reactive-users=2000 -Dloadtest.reactive-tomcat-threads=400]
+// Prints both runs side by side and writes them to loadtest.reactive-report
+@Slf4j
+class ReactiveLoadTest {
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    @Test
+    void reactiveVersusServletJournalApi() throws Exception {
+        LoadDriver.Settings settings = new LoadDriver.Settings(
+                Integer.parseInt(setting("loadtest.reactive-users", "1000")),
+                Duration.ofSeconds(Long.parseLong(setting("loadtest.duration-s", "60"))),
+                Duration.ofSeconds(Long.parseLong(setting("loadtest.ramp-up-s", "10"))),
+                Long.parseLong(setting("loadtest.think-time-ms", "100")));
+
+        Map<String, Object> runs = new LinkedHashMap<>();
+        Map<String, LatencyStats> statsByTier = new LinkedHashMap<>();
+        Map<String, Double> secondsByTier = new LinkedHashMap<>();
+        ObjectMapper objectMapper;
+        try (EmbeddedMongo mongo = EmbeddedMongo.start(setting("loadtest.mongo-version", "7.0"));
+             VendorStubs vendorStubs = new VendorStubs(
+                     Long.parseLong(setting("loadtest.speechify-latency-ms", "800")),
+                     Long.parseLong(setting("loadtest.weather-latency-ms", "300")));
+             ConfigurableApplicationContext app = start(mongo, vendorStubs, settings.users())) {
+            objectMapper = app.getBean(ObjectMapper.class);
+            String servletUrl = "http://127.0.0.1:" + ((WebServerApplicationContext) app).getWebServer().getPort();
+            String reactiveUrl = "http://127.0.0.1:" + app.getBean(ReactiveJournalServer.class).getPort();
+
+            for (String tier : new String[]{"reactive", "servlet"}) {
+                String journalUrl = tier.equals("reactive") ? reactiveUrl : servletUrl;
+                log.info("Tier {}: {} users for {}s against {}", tier, settings.users(), settings.duration().toSeconds(), journalUrl);
+
+                THREADS.resetPeakThreadCount();
+                long start = System.nanoTime();
+                LatencyStats stats = new LoadDriver(servletUrl, journalUrl, false, settings, objectMapper).run();
+                double seconds = (System.nanoTime() - start) / 1e9;
+
+                statsByTier.put(tier, stats);
+                secondsByTier.put(tier, seconds);
+                Map<String, Object> run = new LinkedHashMap<>();
+                run.put("requests", stats.totalCount());
+                run.put("errors", stats.totalErrors());
+                run.put("throughputPerSec", stats.totalCount() / seconds);
+                // platform threads of the whole jvm, both servers are up in both runs, only one of them is busy
+                run.put("peakPlatformThreads", THREADS.getPeakThreadCount());
+                run.put("endpoints", LoadReport.endpoints(stats, seconds));
+                runs.put(tier, run);
+                log.info("Tier {} results:{}", tier, LoadReport.table(stats, seconds));
+            }
+        }
+
+        log.info("Reactive versus servlet journal api:{}", LoadReport.comparison(statsByTier, secondsByTier, runs));
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("users", settings.users());
+        report.put("durationSeconds", settings.duration().toSeconds());
+        report.put("tomcatThreads", Integer.parseInt(setting("loadtest.reactive-tomcat-threads", "200")));
+        report.put("runs", runs);
+        LoadReport.write(objectMapper, report, setting("loadtest.reactive-report", "target/loadtest-reactive.json"));
+
+        double maxErrorRatio = Double.parseDouble(setting("loadtest.max-error-ratio", "0.01"));
+        statsByTier.forEach((tier, stats) -> {
+            assertTrue(stats.totalCount() > 0, tier + " made no request");
+            double errorRatio = (double) stats.totalErrors() / stats.totalCount();
+            assertTrue(errorRatio <= maxErrorRatio, tier + " error ratio " + errorRatio + " is above " + maxErrorRatio);
+        });
+    }
+
+    private ConfigurableApplicationContext start(EmbeddedMongo mongo, VendorStubs vendorStubs, int users) {
+        // command line arguments, so they win over a local application.properties
+        return new SpringApplicationBuilder(JournalApplication.class).run(
+                "--server.port=0",
+                "--journal.reactive.enabled=true",
+                "--journal.reactive.port=0",
+                "--server.tomcat.threads.max=" + setting("loadtest.reactive-tomcat-threads", "200"),
+                "--spring.data.mongodb.uri=" + mongo.connectionString("journal_reactive"),
+                "--speechify.api.url=" + vendorStubs.speechifyUrl(),
+                "--jwt.secret.key=load-test-secret-key-that-is-long-enough-for-hs256",
+                "--weather.api.key=load-test",
+                "--speechify.api.key=load-test",
+                "--security.bcrypt.strength=4",
+                "--security.bcrypt.queue=" + Math.max(64, users),
+                "--security.login.per-ip-per-minute=1000000");
+    }
+
+    private static String setting(String name, String defaultValue) {
+        return System.getProperty(name, defaultValue);
+    }
+}
@@ -0,0 +1,231 @@
+package com.learnpr1.journalApp.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learnpr1.journalApp.JournalApplication;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// The two engines of /journal/search on the same data: the owner_text mongo index and LocalSearchIndex
+// One user gets loadtest.search-entries entries through /journal/bulk, then each engine answers loadtest.search-queries
+// queries of one to three words from loadtest.search-concurrency threads, after a warm up that also builds the local index
+// "GET /journal/search" is the latency seen by the client, "server tookMs" the time the engine reported itself
+// mvn -Ploadtest verify -Dtest=SearchEngineLoadTest [-Dloadtest.search-entries=20000 -Dloadtest.search-queries=5000]
+// Prints both engines side by side and writes them to loadtest.search-report
+@Slf4j
+class SearchEngineLoadTest {
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final int WARM_UP_QUERIES = 50;
+
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(5))
+            .executor(Executors.newVirtualThreadPerTaskExecutor())
+            .build();
+
+    private ObjectMapper objectMapper;
+    private String baseUrl;
+    private String jwt;
+
+    @Test
+    void mongoVersusLocalSearch() throws Exception {
+        int entries = Integer.parseInt(setting("loadtest.search-entries", "2000"));
+        int queries = Integer.parseInt(setting("loadtest.search-queries", "2000"));
+        int concurrency = Integer.parseInt(setting("loadtest.search-concurrency", "8"));
+        List<String> vocabulary = vocabulary();
+
+        Map<String, Object> runs = new LinkedHashMap<>();
+        Map<String, LatencyStats> statsByEngine = new LinkedHashMap<>();
+        Map<String, Double> secondsByEngine = new LinkedHashMap<>();
+        try (EmbeddedMongo mongo = EmbeddedMongo.start(setting("loadtest.mongo-version", "7.0"));
+             ConfigurableApplicationContext app = start(mongo)) {
+            objectMapper = app.getBean(ObjectMapper.class);
+            baseUrl = "http://127.0.0.1:" + ((WebServerApplicationContext) app).getWebServer().getPort();
+            login();
+            seed(entries, vocabulary);
+
+            for (String engine : new String[]{"mongo", "local"}) {
+                for (int i = 0; i < WARM_UP_QUERIES; i++) {
+                    search(engine, randomQuery(vocabulary), new LatencyStats());
+                }
+                log.info("Engine {}: {} queries over {} entries from {} threads", engine, queries, entries, concurrency);
+
+                THREADS.resetPeakThreadCount();
+                long start = System.nanoTime();
+                LatencyStats stats = run(engine, queries, concurrency, vocabulary);
+                double seconds = (System.nanoTime() - start) / 1e9;
+
+                statsByEngine.put(engine, stats);
+                secondsByEngine.put(engine, seconds);
+                Map<String, Object> run = new LinkedHashMap<>();
+                run.put("requests", stats.totalCount());
+                run.put("errors", stats.totalErrors());
+                run.put("throughputPerSec", queries / seconds);
+                run.put("peakPlatformThreads", THREADS.getPeakThreadCount());
+                run.put("endpoints", LoadReport.endpoints(stats, seconds));
+                runs.put(engine, run);
+                log.info("Engine {} results:{}", engine, LoadReport.table(stats, seconds));
+            }
+        }
+
+        log.info("Mongo text index versus local index:{}", LoadReport.comparison(statsByEngine, secondsByEngine, runs));
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("entries", entries);
+        report.put("queries", queries);
+        report.put("concurrency", concurrency);
+        report.put("runs", runs);
+        LoadReport.write(objectMapper, report, setting("loadtest.search-report", "target/loadtest-search.json"));
+
+        statsByEngine.forEach((engine, stats) -> assertEquals(0, stats.totalErrors(), engine + " had failed searches"));
+    }
+
+    private LatencyStats run(String engine, int queries, int concurrency, List<String> vocabulary) throws Exception {
+        List<Future<LatencyStats>> results = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int t = 0; t < concurrency; t++) {
+                int share = queries / concurrency + (t < queries % concurrency ? 1 : 0);
+                results.add(executor.submit(() -> {
+                    LatencyStats stats = new LatencyStats();
+                    for (int i = 0; i < share; i++) {
+                        search(engine, randomQuery(vocabulary), stats);
+                    }
+                    return stats;
+                }));
+            }
+        }
+        LatencyStats merged = new LatencyStats();
+        for (Future<LatencyStats> result : results) {
+            merged.merge(result.get());
+        }
+        return merged;
+    }
+
+    //A failed call, or an answer from another engine than the one asked for, counts as an error
+    private void search(String engine, String query, LatencyStats stats) throws InterruptedException {
+        HttpRequest request = authorized("/journal/search?size=20&engine=" + engine + "&q=" + URLEncoder.encode(query, StandardCharsets.UTF_8))
+                .GET().build();
+        long start = System.nanoTime();
+        try {
+            HttpResponse<byte[]> response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+            long nanos = System.nanoTime() - start;
+            JsonNode page = response.statusCode() == 200 ? objectMapper.readTree(response.body()) : objectMapper.missingNode();
+            boolean ok = engine.equals(page.path("engine").asText());
+            stats.record("GET /journal/search", nanos, !ok);
+            if (ok) {
+                stats.record("server tookMs", page.path("tookMs").asLong() * 1_000_000, false);
+            }
+        } catch (IOException e) {
+            stats.record("GET /journal/search", System.nanoTime() - start, true);
+        }
+    }
+
+    private void login() throws IOException, InterruptedException {
+        byte[] credentials = objectMapper.writeValueAsBytes(Map.of("username", "search-bench", "password", "search-bench-password"));
+        send(json("/public/signup").POST(HttpRequest.BodyPublishers.ofByteArray(credentials)).build());
+        HttpResponse<byte[]> response = send(json("/public/login").POST(HttpRequest.BodyPublishers.ofByteArray(credentials)).build());
+        jwt = objectMapper.readTree(response.body()).path("jwt").asText();
+    }
+
+    //Entries of 40 to 200 words picked from the vocabulary, the same for every run
+    private void seed(int entries, List<String> vocabulary) throws IOException, InterruptedException {
+        Random random = new Random(42);
+        StringBuilder ndjson = new StringBuilder();
+        for (int i = 0; i < entries; i++) {
+            StringBuilder content = new StringBuilder();
+            int words = 40 + random.nextInt(160);
+            for (int w = 0; w < words; w++) {
+                content.append(vocabulary.get(random.nextInt(vocabulary.size()))).append(w % 12 == 11 ? ". " : " ");
+            }
+            String title = vocabulary.get(random.nextInt(vocabulary.size())) + " " + vocabulary.get(random.nextInt(vocabulary.size()));
+            ndjson.append(objectMapper.writeValueAsString(Map.of("title", title, "content", content.toString()))).append('\n');
+        }
+        send(authorized("/journal/bulk").header("Content-Type", "application/x-ndjson")
+                .POST(HttpRequest.BodyPublishers.ofString(ndjson.toString())).build());
+        log.info("Seeded {} entries", entries);
+    }
+
+    private HttpResponse<byte[]> send(HttpRequest request) throws IOException, InterruptedException {
+        HttpResponse<byte[]> response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        assertTrue(response.statusCode() / 100 == 2, request.uri().getPath() + " answered " + response.statusCode());
+        return response;
+    }
+
+    private HttpRequest.Builder authorized(String path) {
+        return request(path).header("Authorization", "Bearer " + jwt);
+    }
+
+    private HttpRequest.Builder json(String path) {
+        return request(path).header("Content-Type", "application/json");
+    }
+
+    private HttpRequest.Builder request(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path)).timeout(Duration.ofSeconds(60));
+    }
+
+    private static String randomQuery(List<String> vocabulary) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        StringBuilder query = new StringBuilder(vocabulary.get(random.nextInt(vocabulary.size())));
+        for (int i = random.nextInt(3); i > 0; i--) {
+            query.append(' ').append(vocabulary.get(random.nextInt(vocabulary.size())));
+        }
+        return query.toString();
+    }
+
+    //500 made up words, no stop words, so both engines index all of them
+    private static List<String> vocabulary() {
+        String[] starts = {"bar", "cor", "del", "fen", "gal", "hol", "jun", "kir", "lom", "mar",
+                "nor", "pel", "quin", "ros", "sal", "tem", "ul", "ver", "wil", "zan"};
+        String[] ends = {"bank", "dale", "fort", "gate", "holm", "ley", "mere", "more", "port", "quay",
+                "ridge", "shaw", "stead", "thorpe", "ton", "vale", "wick", "wood", "worth", "yard", "by", "cott", "field", "ford", "hurst"};
+        List<String> words = new ArrayList<>();
+        for (String start : starts) {
+            for (String end : ends) {
+                words.add(start + end);
+            }
+        }
+        return words;
+    }
+
+    private ConfigurableApplicationContext start(EmbeddedMongo mongo) {
+        // command line arguments, so they win over a local application.properties
+        return new SpringApplicationBuilder(JournalApplication.class).run(
+                "--server.port=0",
+                "--spring.data.mongodb.uri=" + mongo.connectionString("journal_search"),
+                "--jwt.secret.key=load-test-secret-key-that-is-long-enough-for-hs256",
+                "--weather.api.key=load-test",
+                "--speechify.api.key=load-test",
+                // no vendor calls during the run, the jobs of the imported entries are not due before it ends
+                "--journal.bulk.tts-delay-ms=86400000",
+                "--security.login.per-ip-per-minute=1000000");
+    }
+
+    private static String setting(String name, String defaultValue) {
+        return System.getProperty(name, defaultValue);
+    }
+}
@@ -0,0 +1,114 @@
+package com.learnpr1.journalApp.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learnpr1.journalApp.Cache.AppCache;
+import com.learnpr1.journalApp.JournalApplication;
+import com.learnpr1.journalApp.entity.ConfigJournalAppEntity;
+import com.learnpr1.journalApp.repositary.ConfigJournalAppRepo;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Same mix as JournalLoadTest, run once with tomcat's platform threads and once with spring.threads.virtual.enabled
+// Slow vendor scenario: both stubs answer after loadtest.slow-vendor-latency-ms and the weather cache is off,
+// so every GET /user holds its request thread for that long, and tomcat only has loadtest.tomcat-threads of them
+// mvn -Ploadtest verify -Dtest=ThreadModeLoadTest [-Dloadtest.users=400 -Dloadtest.tomcat-threads=50]
+// Prints both runs side by side and writes them to loadtest.threads-report
+@Slf4j
+class ThreadModeLoadTest {
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    @Test
+    void platformVersusVirtualThreadsWithSlowVendor() throws Exception {
+        long vendorLatencyMs = Long.parseLong(setting("loadtest.slow-vendor-latency-ms", "2000"));
+        LoadDriver.Settings settings = new LoadDriver.Settings(
+                Integer.parseInt(setting("loadtest.users", "50")),
+                Duration.ofSeconds(Long.parseLong(setting("loadtest.duration-s", "60"))),
+                Duration.ofSeconds(Long.parseLong(setting("loadtest.ramp-up-s", "10"))),
+                Long.parseLong(setting("loadtest.think-time-ms", "100")));
+
+        Map<String, Object> runs = new LinkedHashMap<>();
+        Map<String, LatencyStats> statsByMode = new LinkedHashMap<>();
+        Map<String, Double> secondsByMode = new LinkedHashMap<>();
+        ObjectMapper objectMapper = new ObjectMapper();
+        try (EmbeddedMongo mongo = EmbeddedMongo.start(setting("loadtest.mongo-version", "7.0"));
+             VendorStubs vendorStubs = new VendorStubs(vendorLatencyMs, vendorLatencyMs)) {
+            for (boolean virtual : new boolean[]{false, true}) {
+                String mode = virtual ? "virtual" : "platform";
+                try (ConfigurableApplicationContext app = start(mongo, vendorStubs, virtual)) {
+                    objectMapper = app.getBean(ObjectMapper.class);
+                    int port = ((WebServerApplicationContext) app).getWebServer().getPort();
+                    log.info("Thread mode {}: {} users for {}s against port {}", mode, settings.users(),
+                            settings.duration().toSeconds(), port);
+
+                    THREADS.resetPeakThreadCount();
+                    long start = System.nanoTime();
+                    LatencyStats stats = new LoadDriver("http://127.0.0.1:" + port, settings, objectMapper).run();
+                    double seconds = (System.nanoTime() - start) / 1e9;
+
+                    statsByMode.put(mode, stats);
+                    secondsByMode.put(mode, seconds);
+                    Map<String, Object> run = new LinkedHashMap<>();
+                    run.put("requests", stats.totalCount());
+                    run.put("errors", stats.totalErrors());
+                    run.put("throughputPerSec", stats.totalCount() / seconds);
+                    // platform threads of the whole jvm, the load driver's share is the same in both runs
+                    run.put("peakPlatformThreads", THREADS.getPeakThreadCount());
+                    run.put("endpoints", LoadReport.endpoints(stats, seconds));
+                    runs.put(mode, run);
+                    log.info("Thread mode {} results:{}", mode, LoadReport.table(stats, seconds));
+                }
+            }
+        }
+
+        log.info("Platform versus virtual threads:{}", LoadReport.comparison(statsByMode, secondsByMode, runs));
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("users", settings.users());
+        report.put("durationSeconds", settings.duration().toSeconds());
+        report.put("tomcatThreads", Integer.parseInt(setting("loadtest.tomcat-threads", "20")));
+        report.put("vendorLatencyMs", vendorLatencyMs);
+        report.put("runs", runs);
+        LoadReport.write(objectMapper, report, setting("loadtest.threads-report", "target/loadtest-threads.json"));
+
+        assertTrue(statsByMode.values().stream().allMatch(stats -> stats.totalCount() > 0), "a run made no request");
+    }
+
+    //A fresh app per mode, each on its own database so the second run doesn't start with the first one's data
+    private ConfigurableApplicationContext start(EmbeddedMongo mongo, VendorStubs vendorStubs, boolean virtual) {
+        // command line arguments, so they win over a local application.properties
+        ConfigurableApplicationContext app = new SpringApplicationBuilder(JournalApplication.class).run(
+                "--server.port=0",
+                "--spring.threads.virtual.enabled=" + virtual,
+                "--server.tomcat.threads.max=" + setting("loadtest.tomcat-threads", "20"),
+                "--spring.data.mongodb.uri=" + mongo.connectionString("journal_threads_" + (virtual ? "virtual" : "platform")),
+                "--speechify.api.url=" + vendorStubs.speechifyUrl(),
+                "--jwt.secret.key=load-test-secret-key-that-is-long-enough-for-hs256",
+                "--weather.api.key=load-test",
+                "--speechify.api.key=load-test",
+                "--security.login.per-ip-per-minute=1000000",
+                // no cache, every GET /user waits for the slow weather stub
+                "--weather.cache.ttl-ms=0",
+                "--weather.cache.stale-ms=0");
+        ConfigJournalAppEntity weatherApi = new ConfigJournalAppEntity();
+        weatherApi.setKey("WeatherApi");
+        weatherApi.setValue(vendorStubs.weatherUrl());
+        app.getBean(ConfigJournalAppRepo.class).save(weatherApi);
+        app.getBean(AppCache.class).reload();
+        return app;
+    }
+
+    private static String setting(String name, String defaultValue) {
+        return System.getProperty(name, defaultValue);
+    }
+}
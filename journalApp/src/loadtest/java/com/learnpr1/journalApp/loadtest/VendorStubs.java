@@ -0,0 +1,112 @@
+package com.learnpr1.journalApp.loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Local stand-ins for speechify and weatherstack, one jdk HttpServer with a virtual thread per request
+// Every answer waits for the configured latency first, so the app's threads are held like against the real vendors
+// POST /v1/audio/stream -> CLIP_BYTES of fake mp3, sent in chunks like a streamed clip
+// GET  /current         -> a weatherstack shaped json
+final class VendorStubs implements AutoCloseable {
+
+    private static final int CLIP_BYTES = 48 * 1024;
+    private static final int CHUNK_BYTES = 8 * 1024;
+
+    private static final byte[] WEATHER_JSON = """
+            {"current":{"temperature":27,"weather_descriptions":["Partly cloudy"],
+            "astro":{"sunrise":"06:21 AM","sunset":"06:45 PM"},
+            "air_quality":{"co":"290.5","no2":"11.1","o3":"60","so2":"4.3","pm2_5":"21.4","pm10":"33.9"}}}
+            """.getBytes(StandardCharsets.UTF_8);
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final long speechifyLatencyMs;
+    private final long weatherLatencyMs;
+
+    private final AtomicLong speechifyCalls = new AtomicLong();
+    private final AtomicLong weatherCalls = new AtomicLong();
+
+    VendorStubs(long speechifyLatencyMs, long weatherLatencyMs) throws IOException {
+        this.speechifyLatencyMs = speechifyLatencyMs;
+        this.weatherLatencyMs = weatherLatencyMs;
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        server.setExecutor(executor);
+        server.createContext("/v1/audio/stream", this::speech);
+        server.createContext("/current", this::weather);
+        server.start();
+    }
+
+    String speechifyUrl() {
+        return baseUrl() + "/v1/audio/stream";
+    }
+
+    String weatherUrl() {
+        return baseUrl() + "/current";
+    }
+
+    long getSpeechifyCalls() {
+        return speechifyCalls.get();
+    }
+
+    long getWeatherCalls() {
+        return weatherCalls.get();
+    }
+
+    private String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    private void speech(HttpExchange exchange) throws IOException {
+        speechifyCalls.incrementAndGet();
+        try (exchange) {
+            exchange.getRequestBody().readAllBytes();
+            pause(speechifyLatencyMs);
+            exchange.getResponseHeaders().set("Content-Type", "audio/mpeg");
+            exchange.sendResponseHeaders(200, 0); // chunked
+            byte[] chunk = new byte[CHUNK_BYTES];
+            try (OutputStream body = exchange.getResponseBody()) {
+                for (int sent = 0; sent < CLIP_BYTES; sent += CHUNK_BYTES) {
+                    body.write(chunk, 0, Math.min(CHUNK_BYTES, CLIP_BYTES - sent));
+                    body.flush();
+                }
+            }
+        }
+    }
+
+    private void weather(HttpExchange exchange) throws IOException {
+        weatherCalls.incrementAndGet();
+        try (exchange) {
+            pause(weatherLatencyMs);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, WEATHER_JSON.length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(WEATHER_JSON);
+            }
+        }
+    }
+
+    private static void pause(long ms) {
+        if (ms <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
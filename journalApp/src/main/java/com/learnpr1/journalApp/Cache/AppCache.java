@@ -3,38 +3,143 @@ package com.learnpr1.journalApp.Cache;
 
 import com.learnpr1.journalApp.entity.ConfigJournalAppEntity;
 import com.learnpr1.journalApp.repositary.ConfigJournalAppRepo;
+import com.mongodb.client.MongoChangeStreamCursor;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.annotation.Bean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.time.Instant;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
 
+// Config from the config_journalApp collection, kept as an immutable snapshot that is swapped in one go
+// Reads never lock, they just read the current snapshot
+// Changes are picked up by a mongo change stream, and by polling every app-cache.poll-interval-ms
+// while the change stream is not running (e.g. mongo is not a replica set)
+// POST /admin/reload-config forces a reload
+@Slf4j
 @Component
 public class AppCache {
 
+    //version goes up every time the config content changes
+    public record Snapshot(Map<String, String> values, long version, Instant loadedAt) {
+    }
+
     @Autowired
     private ConfigJournalAppRepo configJournalAppRepo;
 
-    public Map<String, String> APP_CACHE;
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Value("${app-cache.watch-retry-ms:60000}")
+    private long watchRetryMs;
+
+    private volatile Snapshot snapshot = new Snapshot(Map.of(), 0, Instant.EPOCH);
+
+    private final ReentrantLock reloadLock = new ReentrantLock();
+
+    private volatile boolean running = true;
+    private volatile boolean watching;
+    private volatile MongoChangeStreamCursor<?> changeStreamCursor;
+    private Thread watcher;
 
     @PostConstruct // This method will be called after the bean is created and dependencies are injected
     public void init(){
-        APP_CACHE=new HashMap<>();
-        List<ConfigJournalAppEntity> configList = configJournalAppRepo.findAll();
-        for (ConfigJournalAppEntity configJournalAppEntity : configList) {
-            APP_CACHE.put(configJournalAppEntity.getKey(), configJournalAppEntity.getValue());
+        reload();
+        watcher = Thread.ofVirtual().name("app-cache-watcher").start(this::watchChanges);
+    }
+
+    public String get(String key) {
+        return snapshot.values().get(key);
+    }
+
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    //Reads the whole config collection and swaps it in if anything changed
+    public Snapshot reload() {
+        reloadLock.lock();
+        try {
+            List<ConfigJournalAppEntity> configList = configJournalAppRepo.findAll();
+            Map<String, String> values = new HashMap<>();
+            for (ConfigJournalAppEntity configJournalAppEntity : configList) {
+                values.put(configJournalAppEntity.getKey(), configJournalAppEntity.getValue());
+            }
+            Snapshot current = snapshot;
+            if (!values.equals(current.values()) || current.version() == 0) {
+                snapshot = new Snapshot(Map.copyOf(values), current.version() + 1, Instant.now());
+                log.info("Loaded config version {} with {} keys", snapshot.version(), values.size());
+            }
+            return snapshot;
+        } finally {
+            reloadLock.unlock();
         }
+    }
 
+    // fallback for when there is no change stream
+    @Scheduled(fixedDelayString = "${app-cache.poll-interval-ms:10000}")
+    public void poll() {
+        if (!watching) {
+            try {
+                reload();
+            } catch (Exception e) {
+                log.warn("Could not reload config: {}", e.getMessage());
+            }
+        }
+    }
 
-        //If you make any changes in the config DataBase it will not automatically lode here
-        //You have to restart the application to load the new config data
-        //If you want to make it dynamic, you can make a controller which only calls init() method
-        //It will clear the cache and reload the data from the database
+    private void watchChanges() {
+        String collection = mongoTemplate.getCollectionName(ConfigJournalAppEntity.class);
+        while (running) {
+            try (MongoChangeStreamCursor<?> cursor = mongoTemplate.getCollection(collection).watch(Document.class).cursor()) {
+                changeStreamCursor = cursor;
+                watching = true;
+                // catch anything that changed between the last reload and the stream opening
+                reload();
+                while (running && cursor.hasNext()) {
+                    cursor.next();
+                    reload();
+                }
+            } catch (Exception e) {
+                if (running) {
+                    log.warn("Config change stream stopped, polling instead: {}", e.getMessage());
+                }
+            } finally {
+                watching = false;
+                changeStreamCursor = null;
+            }
+            sleepBeforeRetry();
+        }
+    }
 
+    private void sleepBeforeRetry() {
+        try {
+            Thread.sleep(watchRetryMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
 
+    @PreDestroy
+    public void stop() {
+        running = false;
+        MongoChangeStreamCursor<?> cursor = changeStreamCursor;
+        if (cursor != null) {
+            cursor.close();
+        }
+        if (watcher != null) {
+            watcher.interrupt();
+        }
     }
 
 }
@@ -0,0 +1,311 @@
+package com.learnpr1.journalApp.Cache;
+
+
+import com.learnpr1.journalApp.entity.JournalEntry;
+import com.learnpr1.journalApp.entity.TtsCacheEntry;
+import com.learnpr1.journalApp.storage.AudioStore;
+import com.learnpr1.journalApp.storage.StoredAudio;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Remembers which audio was already made for a text, so the same text is never sent to the speech api twice
+// Key = sha-256 of normalized title + content + voice_id
+// First tier is a small LRU in memory, second tier is the tts_cache collection so it survives restarts
+// The audio files referenced from here are shared between entries, so entries must not delete them
+// Generations of the same key in this app are coalesced, so two jobs for the same text call the api once
+// Every use bumps lastUsedAt (at most once per tts.cache.touch-interval-ms), and collectUnused deletes the keys
+// nobody used for tts.cache.retention-ms together with their audio, unless an entry still plays that audio
+@Slf4j
+@Component
+public class TtsCache {
+
+    //Makes the audio for a key, the vendor call in production
+    @FunctionalInterface
+    public interface Generator {
+        StoredAudio generate() throws Exception;
+    }
+
+    //touchedAt is the lastUsedAt the document had when it was read or last bumped
+    private record Remembered(StoredAudio audio, long touchedAt) {
+    }
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private AudioStore audioStore;
+
+    // an access ordered LinkedHashMap changes on every get, so even reads take the lock
+    // a ReentrantLock and not synchronized, so a virtual thread waiting here never pins its carrier
+    private final Map<String, Remembered> memory;
+    private final ReentrantLock memoryLock = new ReentrantLock();
+
+    private final Map<String, CompletableFuture<StoredAudio>> inFlight = new ConcurrentHashMap<>();
+
+    private final long touchIntervalMs;
+    private final long retentionMs;
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong persistentHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong collected = new AtomicLong();
+
+    public TtsCache(@Value("${tts.cache.max-entries:1000}") int maxEntries,
+                    @Value("${tts.cache.touch-interval-ms:3600000}") long touchIntervalMs,
+                    @Value("${tts.cache.retention-ms:2592000000}") long retentionMs) {
+        this.memory = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Remembered> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        this.touchIntervalMs = touchIntervalMs;
+        this.retentionMs = retentionMs;
+    }
+
+    public String keyFor(String title, String content, String voiceId) {
+        String text = normalize(title) + "\u0000" + normalize(content) + "\u0000" + voiceId;
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    //Returns the audio made earlier for this key, or null
+    public StoredAudio get(String key) {
+        Remembered remembered = fromMemory(key);
+        if (remembered != null && (System.currentTimeMillis() - remembered.touchedAt() < touchIntervalMs || touch(key, remembered.audio()))) {
+            memoryHits.incrementAndGet();
+            return remembered.audio();
+        }
+        StoredAudio storedAudio = fromMongo(key);
+        if (storedAudio == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        persistentHits.incrementAndGet();
+        return storedAudio;
+    }
+
+    //The cached audio for the key, or the audio made by generator, which is then cached
+    //A caller that comes while the same key is being generated waits for that generation instead of starting its own
+    public StoredAudio getOrGenerate(String key, Generator generator) throws Exception {
+        StoredAudio storedAudio = get(key);
+        if (storedAudio != null) {
+            return storedAudio;
+        }
+        CompletableFuture<StoredAudio> future = new CompletableFuture<>();
+        CompletableFuture<StoredAudio> running = inFlight.putIfAbsent(key, future);
+        if (running != null) {
+            coalesced.incrementAndGet();
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof Exception cause ? cause : e;
+            }
+        }
+        try {
+            // the generation before this one may have finished between get and putIfAbsent
+            storedAudio = fromMongo(key);
+            if (storedAudio == null) {
+                StoredAudio generated = generator.generate();
+                storedAudio = put(key, generated);
+                if (!storedAudio.getRef().equals(generated.getRef())) {
+                    // another app cached the same text while we were generating, keep only one copy
+                    deleteAudio(generated.getRef());
+                }
+            }
+            future.complete(storedAudio);
+            return storedAudio;
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    //Saves freshly made audio under its key and returns what the cache holds now
+    //If another worker cached the same key first, its audio wins and the caller should delete its own copy
+    public StoredAudio put(String key, StoredAudio storedAudio) {
+        Instant now = Instant.now();
+        TtsCacheEntry entry = new TtsCacheEntry(key, storedAudio.getRef(), storedAudio.getLength(), storedAudio.getSha256(), now, now);
+        try {
+            mongoTemplate.insert(entry);
+        } catch (DuplicateKeyException e) {
+            entry = mongoTemplate.findById(key, TtsCacheEntry.class);
+        }
+        StoredAudio cached = toStoredAudio(entry);
+        toMemory(key, new Remembered(cached, lastUsedAt(entry)));
+        return cached;
+    }
+
+    //Deletes the keys nobody used for tts.cache.retention-ms and their audio
+    //Audio an entry still points to is kept and its key counts as used, so entries never lose their audio
+    //Runs in every app, only the one whose delete matched removes the audio
+    @Scheduled(fixedDelayString = "${tts.cache.gc-interval-ms:3600000}", initialDelayString = "${tts.cache.gc-initial-delay-ms:300000}")
+    public void collectUnused() {
+        try {
+            int removed = 0;
+            List<TtsCacheEntry> batch;
+            do {
+                batch = mongoTemplate.find(new Query(unusedSince(Instant.now().minusMillis(retentionMs))).limit(100), TtsCacheEntry.class);
+                for (TtsCacheEntry entry : batch) {
+                    if (mongoTemplate.exists(new Query(Criteria.where("audioRef").is(entry.getAudioRef())), JournalEntry.class)) {
+                        touch(entry.getKey(), toStoredAudio(entry));
+                        continue;
+                    }
+                    Criteria stillUnused = Criteria.where("_id").is(entry.getKey())
+                            .andOperator(unusedSince(Instant.now().minusMillis(retentionMs)));
+                    if (mongoTemplate.remove(new Query(stillUnused), TtsCacheEntry.class).getDeletedCount() > 0) {
+                        forget(entry.getKey());
+                        deleteAudio(entry.getAudioRef());
+                        removed++;
+                    }
+                }
+            } while (!batch.isEmpty());
+            collected.addAndGet(removed);
+            if (removed > 0) {
+                log.info("Tts cache: {} unused clips deleted", removed);
+            }
+        } catch (Exception e) {
+            log.error("Tts cache collection stopped: {}", e.getMessage());
+        }
+    }
+
+    //true when the audio is shared through the cache and must outlive the entry that points to it
+    public boolean ownsAudio(String audioRef) {
+        return mongoTemplate.exists(new Query(Criteria.where("audioRef").is(audioRef)), TtsCacheEntry.class);
+    }
+
+    public Map<String, Object> stats() {
+        long hits = memoryHits.get() + persistentHits.get();
+        long total = hits + misses.get();
+        return Map.of(
+                "memoryHits", memoryHits.get(),
+                "persistentHits", persistentHits.get(),
+                "misses", misses.get(),
+                "hitRatio", total == 0 ? 0.0 : (double) hits / total,
+                "memorySize", memorySize(),
+                "coalesced", coalesced.get(),
+                "collected", collected.get());
+    }
+
+    //Bumps lastUsedAt, false when the key was collected meanwhile (by another app), it is then forgotten here too
+    private boolean touch(String key, StoredAudio storedAudio) {
+        Instant now = Instant.now();
+        if (mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(key)), new Update().set("lastUsedAt", now), TtsCacheEntry.class).getMatchedCount() == 0) {
+            forget(key);
+            return false;
+        }
+        toMemory(key, new Remembered(storedAudio, now.toEpochMilli()));
+        return true;
+    }
+
+    private StoredAudio fromMongo(String key) {
+        TtsCacheEntry entry = mongoTemplate.findById(key, TtsCacheEntry.class);
+        if (entry == null) {
+            return null;
+        }
+        StoredAudio storedAudio = toStoredAudio(entry);
+        if (System.currentTimeMillis() - lastUsedAt(entry) >= touchIntervalMs) {
+            touch(key, storedAudio);
+        } else {
+            toMemory(key, new Remembered(storedAudio, lastUsedAt(entry)));
+        }
+        return storedAudio;
+    }
+
+    //keys cached before lastUsedAt existed count from their createdAt
+    private static Criteria unusedSince(Instant cutoff) {
+        return new Criteria().orOperator(
+                Criteria.where("lastUsedAt").lt(cutoff),
+                Criteria.where("lastUsedAt").exists(false).and("createdAt").lt(cutoff));
+    }
+
+    private static long lastUsedAt(TtsCacheEntry entry) {
+        Instant lastUsedAt = entry.getLastUsedAt() != null ? entry.getLastUsedAt() : entry.getCreatedAt();
+        return lastUsedAt != null ? lastUsedAt.toEpochMilli() : 0;
+    }
+
+    private void deleteAudio(String audioRef) {
+        try {
+            audioStore.delete(audioRef);
+        } catch (Exception e) {
+            log.warn("Could not delete audio {}: {}", audioRef, e.getMessage());
+        }
+    }
+
+    private Remembered fromMemory(String key) {
+        memoryLock.lock();
+        try {
+            return memory.get(key);
+        } finally {
+            memoryLock.unlock();
+        }
+    }
+
+    private void toMemory(String key, Remembered remembered) {
+        memoryLock.lock();
+        try {
+            memory.put(key, remembered);
+        } finally {
+            memoryLock.unlock();
+        }
+    }
+
+    private void forget(String key) {
+        memoryLock.lock();
+        try {
+            memory.remove(key);
+        } finally {
+            memoryLock.unlock();
+        }
+    }
+
+    private int memorySize() {
+        memoryLock.lock();
+        try {
+            return memory.size();
+        } finally {
+            memoryLock.unlock();
+        }
+    }
+
+    // same text with different spacing or line breaks sounds the same, so it gets the same key
+    private String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        return text.strip().replaceAll("\\s+", " ");
+    }
+
+    private StoredAudio toStoredAudio(TtsCacheEntry entry) {
+        return new StoredAudio(entry.getAudioRef(), entry.getAudioLength(), entry.getAudioHash());
+    }
+}
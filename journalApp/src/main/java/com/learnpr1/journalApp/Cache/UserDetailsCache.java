@@ -0,0 +1,69 @@
+package com.learnpr1.journalApp.Cache;
+
+
+import com.learnpr1.journalApp.service.UserDetailServiceIMPL;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Short lived cache of users for the JwtFilter when jwt.stateless=false
+// A deleted user or a changed role is seen after at most auth.user-cache.ttl-ms, UserService evicts right away on its own changes
+@Component
+public class UserDetailsCache {
+
+    private record Cached(UserDetails userDetails, long loadedAt) {
+    }
+
+    @Autowired
+    private UserDetailServiceIMPL userDetailService;
+
+    private final long ttlMs;
+    private final int maxEntries;
+    private final Map<String, Cached> entries = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public UserDetailsCache(@Value("${auth.user-cache.ttl-ms:30000}") long ttlMs,
+                            @Value("${auth.user-cache.max-entries:10000}") int maxEntries) {
+        this.ttlMs = ttlMs;
+        this.maxEntries = maxEntries;
+    }
+
+    //Throws UsernameNotFoundException like the UserDetailsService does
+    public UserDetails get(String username) {
+        long now = System.currentTimeMillis();
+        Cached cached = entries.get(username);
+        if (cached != null && now - cached.loadedAt() < ttlMs) {
+            hits.incrementAndGet();
+            return cached.userDetails();
+        }
+        misses.incrementAndGet();
+        UserDetails userDetails = userDetailService.loadUserByUsername(username);
+        if (entries.size() >= maxEntries) {
+            entries.values().removeIf(entry -> now - entry.loadedAt() >= ttlMs);
+        }
+        if (entries.size() < maxEntries) {
+            entries.put(username, new Cached(userDetails, now));
+        }
+        return userDetails;
+    }
+
+    public void evict(String username) {
+        entries.remove(username);
+    }
+
+    public Map<String, Object> stats() {
+        long total = hits.get() + misses.get();
+        return Map.of(
+                "hits", hits.get(),
+                "misses", misses.get(),
+                "hitRatio", total == 0 ? 0.0 : (double) hits.get() / total,
+                "size", entries.size());
+    }
+}
@@ -0,0 +1,83 @@
+package com.learnpr1.journalApp.Cache;
+
+
+import io.jsonwebtoken.Claims;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Claims of tokens whose signature was already checked, so a client sending the same token again skips the crypto
+// Keyed by the sha-256 of the token, an entry is only used till the token's exp
+// Holds at most jwt.cache.max-entries tokens, when full the expired ones are dropped and new tokens are not cached
+@Component
+public class VerifiedTokenCache {
+
+    private record Verified(Claims claims, long expiresAt) {
+    }
+
+    private final int maxEntries;
+    private final Map<String, Verified> entries = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public VerifiedTokenCache(@Value("${jwt.cache.max-entries:10000}") int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    //Returns the claims if the token was verified before and has not expired yet, otherwise null
+    public Claims get(String token) {
+        String key = hash(token);
+        Verified verified = entries.get(key);
+        if (verified == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        if (verified.expiresAt() <= System.currentTimeMillis()) {
+            entries.remove(key, verified);
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return verified.claims();
+    }
+
+    public void put(String token, Claims claims) {
+        if (claims.getExpiration() == null) {
+            return; // never cache a token that doesn't expire
+        }
+        if (entries.size() >= maxEntries) {
+            long now = System.currentTimeMillis();
+            entries.values().removeIf(verified -> verified.expiresAt() <= now);
+            if (entries.size() >= maxEntries) {
+                return;
+            }
+        }
+        entries.put(hash(token), new Verified(claims, claims.getExpiration().getTime()));
+    }
+
+    public Map<String, Object> stats() {
+        long total = hits.get() + misses.get();
+        return Map.of(
+                "hits", hits.get(),
+                "misses", misses.get(),
+                "hitRatio", total == 0 ? 0.0 : (double) hits.get() / total,
+                "size", entries.size());
+    }
+
+    private String hash(String token) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.learnpr1.journalApp.Cache;
+
+
+import com.learnpr1.journalApp.ApiResponse.WeatherResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+// Weather per city so GET /user doesn't call weatherstack every time
+// - younger than weather.cache.ttl-ms: served from here
+// - older, but within weather.cache.stale-ms after that: served from here while it is refreshed in the background
+// - older than that (or never fetched): the caller waits for a fresh one
+// Callers that miss the same city at the same time share one upstream call
+@Slf4j
+@Component
+public class WeatherCache {
+
+    private record Cached(WeatherResponse weather, long fetchedAt) {
+    }
+
+    private final long ttlMs;
+    private final long staleMs;
+
+    private final Map<String, Cached> entries = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<WeatherResponse>> inFlight = new ConcurrentHashMap<>();
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("weather-", 0).factory());
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong staleHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong upstreamCalls = new AtomicLong();
+    private final AtomicLong upstreamErrors = new AtomicLong();
+    private final AtomicLong upstreamLatencyNanos = new AtomicLong();
+    private final AtomicLong maxUpstreamLatencyNanos = new AtomicLong();
+
+    public WeatherCache(@Value("${weather.cache.ttl-ms:600000}") long ttlMs,
+                        @Value("${weather.cache.stale-ms:1800000}") long staleMs) {
+        this.ttlMs = ttlMs;
+        this.staleMs = staleMs;
+    }
+
+    //loader does the real call and returns null when it fails, a failed refresh keeps the old value
+    public WeatherResponse get(String city, Function<String, WeatherResponse> loader) {
+        String key = city.strip().toLowerCase(Locale.ROOT);
+        Cached cached = entries.get(key);
+        long age = cached == null ? Long.MAX_VALUE : System.currentTimeMillis() - cached.fetchedAt();
+        if (age < ttlMs) {
+            hits.incrementAndGet();
+            return cached.weather();
+        }
+        if (age < ttlMs + staleMs) {
+            staleHits.incrementAndGet();
+            refresh(key, city, loader);
+            return cached.weather();
+        }
+        misses.incrementAndGet();
+        WeatherResponse weather = refresh(key, city, loader).join();
+        return weather != null ? weather : cached == null ? null : cached.weather();
+    }
+
+    public Map<String, Object> stats() {
+        long served = hits.get() + staleHits.get();
+        long total = served + misses.get();
+        long calls = upstreamCalls.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("hits", hits.get());
+        stats.put("staleHits", staleHits.get());
+        stats.put("misses", misses.get());
+        stats.put("hitRatio", total == 0 ? 0.0 : (double) served / total);
+        stats.put("upstreamCalls", calls);
+        stats.put("upstreamErrors", upstreamErrors.get());
+        stats.put("avgUpstreamLatencyMs", calls == 0 ? 0.0 : upstreamLatencyNanos.get() / 1_000_000.0 / calls);
+        stats.put("maxUpstreamLatencyMs", maxUpstreamLatencyNanos.get() / 1_000_000.0);
+        stats.put("cities", entries.size());
+        return stats;
+    }
+
+    // starts a fetch unless one is already running for this city, in which case that one is returned
+    private CompletableFuture<WeatherResponse> refresh(String key, String city, Function<String, WeatherResponse> loader) {
+        CompletableFuture<WeatherResponse> future = new CompletableFuture<>();
+        CompletableFuture<WeatherResponse> running = inFlight.putIfAbsent(key, future);
+        if (running != null) {
+            return running;
+        }
+        executor.execute(() -> {
+            upstreamCalls.incrementAndGet();
+            long start = System.nanoTime();
+            try {
+                WeatherResponse weather = loader.apply(city);
+                if (weather != null) {
+                    entries.put(key, new Cached(weather, System.currentTimeMillis()));
+                } else {
+                    upstreamErrors.incrementAndGet();
+                }
+                future.complete(weather);
+            } catch (Exception e) {
+                upstreamErrors.incrementAndGet();
+                log.warn("Weather refresh for {} failed: {}", city, e.getMessage());
+                future.complete(null);
+            } finally {
+                long nanos = System.nanoTime() - start;
+                upstreamLatencyNanos.addAndGet(nanos);
+                maxUpstreamLatencyNanos.accumulateAndGet(nanos, Math::max);
+                inFlight.remove(key, future);
+            }
+        });
+        return future;
+    }
+}
@@ -0,0 +1,43 @@
+package com.learnpr1.journalApp.Config;
+
+import com.learnpr1.journalApp.http.CircuitBreaker;
+import com.learnpr1.journalApp.http.VendorHttpClient;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import java.time.Duration;
+
+// One VendorHttpClient per outside api, each with its own pool, bulkhead and circuit breaker
+// Everything can be tuned per vendor with http.<vendor>.* properties, e.g. http.speechify.max-concurrent=8
+@Configuration
+public class HttpClientConfig {
+
+    @Bean
+    public VendorHttpClient speechifyHttpClient(Environment environment, MeterRegistry meterRegistry) {
+        // clips are long, so the request timeout is generous, and the body may stream for a while after it
+        return vendorClient(environment, meterRegistry, "speechify", 10_000, 60_000, 180_000, 8);
+    }
+
+    @Bean
+    public VendorHttpClient weatherHttpClient(Environment environment, MeterRegistry meterRegistry) {
+        return vendorClient(environment, meterRegistry, "weather", 3_000, 5_000, 10_000, 16);
+    }
+
+    private VendorHttpClient vendorClient(Environment environment, MeterRegistry meterRegistry, String vendor,
+                                          long connectTimeoutMs, long requestTimeoutMs, long callTimeoutMs, int maxConcurrent) {
+        String prefix = "http." + vendor + ".";
+        CircuitBreaker circuitBreaker = new CircuitBreaker(
+                environment.getProperty(prefix + "breaker.failure-threshold", Integer.class, 5),
+                environment.getProperty(prefix + "breaker.open-ms", Long.class, 30_000L));
+        return new VendorHttpClient(vendor,
+                Duration.ofMillis(environment.getProperty(prefix + "connect-timeout-ms", Long.class, connectTimeoutMs)),
+                Duration.ofMillis(environment.getProperty(prefix + "request-timeout-ms", Long.class, requestTimeoutMs)),
+                Duration.ofMillis(environment.getProperty(prefix + "call-timeout-ms", Long.class, callTimeoutMs)),
+                environment.getProperty(prefix + "max-concurrent", Integer.class, maxConcurrent),
+                environment.getProperty(prefix + "bulkhead-wait-ms", Long.class, 100L),
+                circuitBreaker,
+                meterRegistry);
+    }
+}
@@ -0,0 +1,102 @@
+package com.learnpr1.journalApp.Config;
+
+import com.learnpr1.journalApp.Cache.TtsCache;
+import com.learnpr1.journalApp.Cache.UserDetailsCache;
+import com.learnpr1.journalApp.Cache.VerifiedTokenCache;
+import com.learnpr1.journalApp.Cache.WeatherCache;
+import com.learnpr1.journalApp.search.LocalSearchIndex;
+import com.learnpr1.journalApp.security.LoginRateLimiter;
+import com.learnpr1.journalApp.security.PasswordUpgradeService;
+import com.learnpr1.journalApp.security.RefreshTokenService;
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Map;
+import java.util.function.Supplier;
+
+// Metrics on /actuator/prometheus, everything else that is measured registers its own meters:
+// - http.server.requests and mongodb.driver.commands / mongodb.driver.pool.* come from spring boot
+// - journal.service timers from @Timed on JournalEntryService and UserService (tags class, method, exception)
+// - security.bcrypt (BoundedPasswordEncoder), security.jwt.verify (JwtUtil), vendor.http.* (VendorHttpClient)
+// The caches and the login/refresh token bookkeeping already count everything for /admin, those counts are
+// published here as the standard cache.gets/cache.size meters and a few security.* counters
+// Every tag has a handful of fixed values, never a user, an id or a path
+@Configuration
+public class MetricsConfig {
+
+    //Makes @Timed work on any bean
+    @Bean
+    public TimedAspect timedAspect(MeterRegistry meterRegistry) {
+        return new TimedAspect(meterRegistry);
+    }
+
+    @Bean
+    public MeterBinder cacheMetrics(VerifiedTokenCache verifiedTokenCache, UserDetailsCache userDetailsCache,
+                                    TtsCache ttsCache, WeatherCache weatherCache, LocalSearchIndex localSearchIndex) {
+        return registry -> {
+            cache(registry, "jwt", verifiedTokenCache::stats, new String[]{"hits"}, "misses", "size");
+            cache(registry, "userDetails", userDetailsCache::stats, new String[]{"hits"}, "misses", "size");
+            cache(registry, "tts", ttsCache::stats, new String[]{"memoryHits", "persistentHits"}, "misses", "memorySize");
+            cache(registry, "weather", weatherCache::stats, new String[]{"hits", "staleHits"}, "misses", "cities");
+            // a search that had to build the user's index counts as the miss
+            cache(registry, "search", localSearchIndex::stats, new String[]{"hits"}, "builds", "users");
+        };
+    }
+
+    @Bean
+    public MeterBinder authMetrics(LoginRateLimiter loginRateLimiter, RefreshTokenService refreshTokenService,
+                                   PasswordUpgradeService passwordUpgradeService) {
+        return registry -> {
+            counter(registry, "security.login.attempts", "result", "allowed", loginRateLimiter::stats, "allowed");
+            counter(registry, "security.login.attempts", "result", "rejected_username", loginRateLimiter::stats, "rejectedByUsername");
+            counter(registry, "security.login.attempts", "result", "rejected_ip", loginRateLimiter::stats, "rejectedByIp");
+            gauge(registry, "security.login.tracked.keys", loginRateLimiter::stats, "trackedKeys");
+
+            counter(registry, "security.refresh.tokens", "result", "rotated", refreshTokenService::stats, "rotations");
+            counter(registry, "security.refresh.tokens", "result", "rejected", refreshTokenService::stats, "rejected");
+            counter(registry, "security.refresh.tokens", "result", "reuse_detected", refreshTokenService::stats, "reuseDetected");
+            gauge(registry, "security.refresh.revoked.families.in.memory", refreshTokenService::stats, "revokedFamiliesInMemory");
+
+            counter(registry, "security.password.upgrades", "result", "upgraded", passwordUpgradeService::stats, "upgraded");
+            counter(registry, "security.password.upgrades", "result", "skipped", passwordUpgradeService::stats, "skipped");
+        };
+    }
+
+    private static void cache(MeterRegistry registry, String cache, Supplier<Map<String, Object>> stats,
+                              String[] hitKeys, String missKey, String sizeKey) {
+        FunctionCounter.builder("cache.gets", stats, source -> sum(source, hitKeys))
+                .tag("cache", cache).tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("cache.gets", stats, source -> sum(source, missKey))
+                .tag("cache", cache).tag("result", "miss")
+                .register(registry);
+        Gauge.builder("cache.size", stats, source -> sum(source, sizeKey))
+                .tag("cache", cache)
+                .register(registry);
+    }
+
+    private static void counter(MeterRegistry registry, String name, String tag, String value,
+                                Supplier<Map<String, Object>> stats, String key) {
+        FunctionCounter.builder(name, stats, source -> sum(source, key)).tag(tag, value).register(registry);
+    }
+
+    private static void gauge(MeterRegistry registry, String name, Supplier<Map<String, Object>> stats, String key) {
+        Gauge.builder(name, stats, source -> sum(source, key)).register(registry);
+    }
+
+    private static double sum(Supplier<Map<String, Object>> stats, String... keys) {
+        Map<String, Object> values = stats.get();
+        double sum = 0;
+        for (String key : keys) {
+            if (values.get(key) instanceof Number number) {
+                sum += number.doubleValue();
+            }
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,48 @@
+package com.learnpr1.journalApp.Config;
+
+import com.learnpr1.journalApp.entity.JournalEntry;
+import com.learnpr1.journalApp.entity.RefreshToken;
+import com.learnpr1.journalApp.entity.TtsCacheEntry;
+import com.learnpr1.journalApp.entity.TtsJob;
+import com.learnpr1.journalApp.entity.User;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.IndexResolver;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+
+import java.util.List;
+
+// Spring Boot does not create the @Indexed / @CompoundIndex indexes by itself (auto-index-creation is off by default)
+// so they are ensured here once the app is up, creating an index that already exists does nothing
+@Slf4j
+@Configuration
+public class MongoIndexConfig {
+
+    private static final List<Class<?>> INDEXED_DOCUMENTS = List.of(User.class, JournalEntry.class, TtsJob.class, TtsCacheEntry.class, RefreshToken.class);
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureIndexes() {
+        IndexResolver resolver = new MongoPersistentEntityIndexResolver(mongoTemplate.getConverter().getMappingContext());
+        for (Class<?> type : INDEXED_DOCUMENTS) {
+            IndexOperations indexOps = mongoTemplate.indexOps(type);
+            resolver.resolveIndexFor(type).forEach(index -> {
+                try {
+                    indexOps.ensureIndex(index);
+                } catch (Exception e) {
+                    log.error("Could not create index {} on {}: {}", index.getIndexKeys(), type.getSimpleName(), e.getMessage());
+                }
+            });
+        }
+    }
+}
@@ -2,8 +2,12 @@ package com.learnpr1.journalApp.Config;
 
 
 import com.learnpr1.journalApp.filter.JwtFilter;
+import com.learnpr1.journalApp.security.PasswordUpgradeService;
+import com.learnpr1.journalApp.security.UpgradingAuthenticationProvider;
 import com.learnpr1.journalApp.service.UserDetailServiceIMPL;
+import jakarta.servlet.DispatcherType;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -16,7 +20,6 @@ import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfiguration;
 import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
@@ -36,11 +39,33 @@ public class SpringSecurity {
     @Autowired
     private JwtFilter jwtFilter;
 
+    //BoundedPasswordEncoder, the one encoder of the app
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    private static final String PROMETHEUS_PATH = "/actuator/prometheus";
+
+    //-1 when actuator shares the public port
+    @Value("${management.server.port:-1}")
+    private int managementPort;
+
+    @Value("${server.port:8080}")
+    private int serverPort;
+
     @Bean
     public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
 
         return http.authorizeHttpRequests(request -> request
+                        // StreamingResponseBody (audio, export, admin stream) finishes in an ASYNC dispatch that JwtFilter
+                        // does not run for, the request was already authorized on its REQUEST dispatch
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC, DispatcherType.ERROR).permitAll()
                         .requestMatchers("/public/**").permitAll()
+                        // for the load balancer
+                        .requestMatchers("/actuator/health/**").permitAll()
+                        // for the prometheus scraper, only on a separate management.server.port, on the public port it needs ADMIN
+                        .requestMatchers(request -> isManagementPort(request.getLocalPort())
+                                && PROMETHEUS_PATH.equals(request.getRequestURI())).permitAll()
+                        .requestMatchers("/actuator/**").hasRole("ADMIN")
                         .requestMatchers("/journal/**", "/user/**").authenticated()
                         .requestMatchers("/admin/**").hasRole("ADMIN")
                         .anyRequest().authenticated())
@@ -66,31 +91,32 @@ public class SpringSecurity {
         return config.getAuthenticationManager();
     }
 
+    //Checks the password and upgrades outdated hashes in the background
     @Bean
-    public DaoAuthenticationProvider authenticationProvider() {
-        DaoAuthenticationProvider authProvider = new DaoAuthenticationProvider();
-        authProvider.setUserDetailsService(userDetailsService);
-        authProvider.setPasswordEncoder(passwordEncoder());
-        return authProvider;
+    public DaoAuthenticationProvider authenticationProvider(PasswordUpgradeService passwordUpgradeService) {
+        return new UpgradingAuthenticationProvider(userDetailsService, passwordEncoder, passwordUpgradeService);
     }
 
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public CorsConfigurationSource corsConfigurationSource() {
+        UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
+        source.registerCorsConfiguration("/**", corsConfiguration());
+        return source;
     }
 
-    @Bean
-    public CorsConfigurationSource corsConfigurationSource() {
+    //Also used by the reactive tier, so both apis accept the same origins and headers
+    public static CorsConfiguration corsConfiguration() {
         CorsConfiguration configuration = new CorsConfiguration();
         configuration.setAllowedOrigins(Arrays.asList("http://localhost:4200"));
         configuration.setAllowedMethods(Arrays.asList("GET", "POST", "PUT", "PATCH", "DELETE", "OPTIONS"));
         configuration.setAllowedHeaders(Arrays.asList("authorization", "content-type", "x-auth-token"));
         configuration.setExposedHeaders(Arrays.asList("x-auth-token"));
         configuration.setAllowCredentials(true);
-        UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
-        source.registerCorsConfiguration("/**", configuration);
-        return source;
+        return configuration;
     }
 
+    //true for a request that came in on its own management port, never when actuator is on the public port
+    private boolean isManagementPort(int localPort) {
+        return managementPort > 0 && managementPort != serverPort && localPort == managementPort;
+    }
 }
-
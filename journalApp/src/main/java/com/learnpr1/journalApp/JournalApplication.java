@@ -2,15 +2,43 @@ package com.learnpr1.journalApp;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.data.mongo.MongoReactiveDataAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.mongo.MongoReactiveRepositoriesAutoConfiguration;
+import org.springframework.boot.autoconfigure.mongo.MongoReactiveAutoConfiguration;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
 
-@SpringBootApplication
+import java.util.Map;
+
+// the reactive mongo client, template and repositories come from ReactiveMongoConfig, only with journal.reactive.enabled
+@SpringBootApplication(exclude = {
+		MongoReactiveAutoConfiguration.class,
+		MongoReactiveDataAutoConfiguration.class,
+		MongoReactiveRepositoriesAutoConfiguration.class})
+@EnableScheduling
 
 public class JournalApplication {
 
+	// defaults only, application.properties wins over them
+	// management.server.port can move /actuator to a port that is not exposed outside
+	private static final Map<String, Object> DEFAULT_PROPERTIES = Map.of(
+			// true: every request and @Scheduled/@Async task runs on a virtual thread instead of tomcat's
+			// server.tomcat.threads.max platform threads, so requests waiting on mongo or a vendor don't hold a thread.
+			// Concurrency is then bounded by the mongo pool, the vendor bulkheads and the bcrypt pool, not by tomcat
+			// The background work (tts, weather refresh, migrations) runs on virtual threads in both modes
+			"spring.threads.virtual.enabled", "false",
+			// true: the /journal endpoints are also served non-blocking on netty at journal.reactive.port (8081)
+			"journal.reactive.enabled", "false",
+			"management.endpoints.web.exposure.include", "health,info,metrics,prometheus",
+			"management.metrics.tags.application", "journalApp",
+			"management.metrics.distribution.percentiles-histogram.http.server.requests", "true",
+			"management.metrics.distribution.percentiles-histogram.mongodb.driver.commands", "true");
+
 	public static void main(String[] args) {
 
-		SpringApplication.run(JournalApplication.class, args);
+		SpringApplication application = new SpringApplication(JournalApplication.class);
+		application.setDefaultProperties(DEFAULT_PROPERTIES);
+		application.run(args);
 	}
 
 }
@@ -1,12 +1,29 @@
 package com.learnpr1.journalApp.controller;
 
 
+import com.learnpr1.journalApp.Cache.AppCache;
+import com.learnpr1.journalApp.Cache.TtsCache;
+import com.learnpr1.journalApp.Cache.UserDetailsCache;
+import com.learnpr1.journalApp.Cache.VerifiedTokenCache;
+import com.learnpr1.journalApp.Cache.WeatherCache;
 import com.learnpr1.journalApp.entity.User;
+import com.learnpr1.journalApp.http.VendorHttpClient;
+import com.learnpr1.journalApp.search.LocalSearchIndex;
+import com.learnpr1.journalApp.security.BoundedPasswordEncoder;
+import com.learnpr1.journalApp.security.LoginRateLimiter;
+import com.learnpr1.journalApp.security.PasswordUpgradeService;
+import com.learnpr1.journalApp.security.RefreshTokenService;
+import com.learnpr1.journalApp.service.AdminUserService;
 import com.learnpr1.journalApp.service.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
 @RestController
 @RequestMapping("/admin")
 public class AdminController {
@@ -14,9 +31,55 @@ public class AdminController {
     @Autowired
     private UserService userService;
 
-    @GetMapping("/all-users")            //localhost:8080/user --GET--
-    public ResponseEntity<?> getAllUsers(){
-        return userService.getAlluser();
+    @Autowired
+    private AdminUserService adminUserService;
+
+    @Autowired
+    private AppCache appCache;
+
+    @Autowired
+    private TtsCache ttsCache;
+
+    @Autowired
+    private WeatherCache weatherCache;
+
+    @Autowired
+    private VerifiedTokenCache verifiedTokenCache;
+
+    @Autowired
+    private UserDetailsCache userDetailsCache;
+
+    @Autowired
+    private LocalSearchIndex localSearchIndex;
+
+    @Autowired
+    private List<VendorHttpClient> vendorHttpClients;
+
+    @Autowired
+    private BoundedPasswordEncoder boundedPasswordEncoder;
+
+    @Autowired
+    private LoginRateLimiter loginRateLimiter;
+
+    @Autowired
+    private PasswordUpgradeService passwordUpgradeService;
+
+    @Autowired
+    private RefreshTokenService refreshTokenService;
+
+    //Lists the users page by page, or all of them as NDJSON with stream=true
+    @GetMapping("/all-users")            //localhost:8080/admin/all-users?page=0&size=50&sort=username&order=asc&role=ADMIN --GET--
+    public ResponseEntity<?> getAllUsers(
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "50") int size,
+            @RequestParam(defaultValue = "username") String sort,
+            @RequestParam(defaultValue = "asc") String order,
+            @RequestParam(required = false) String role,
+            @RequestParam(defaultValue = "false") boolean stream){
+        if (stream) {
+            return adminUserService.streamUsers(sort, order, role);
+        }
+        return adminUserService.listUsers(page, size, sort, order, role);
     }
 
 
@@ -24,4 +87,38 @@ public class AdminController {
     public ResponseEntity<User> createAdmin(@RequestBody User user){
         return userService.createNewAdmin(user);
     }
+
+
+    //Reloads the config_journalApp collection right away instead of waiting for the change stream or the poll
+    @PostMapping("/reload-config")
+    public ResponseEntity<?> reloadConfig(){
+        AppCache.Snapshot snapshot = appCache.reload();
+        return new ResponseEntity<>(Map.of("version", snapshot.version(), "loadedAt", snapshot.loadedAt(),
+                "keys", snapshot.values().keySet()), HttpStatus.OK);
+    }
+
+
+    //Hit and miss counters of the caches
+    @GetMapping("/cache-stats")
+    public ResponseEntity<?> getCacheStats(){
+        return new ResponseEntity<>(Map.of("tts", ttsCache.stats(), "weather", weatherCache.stats(),
+                "jwt", verifiedTokenCache.stats(), "users", userDetailsCache.stats(), "search", localSearchIndex.stats()), HttpStatus.OK);
+    }
+
+
+    //Password hashing pool and login throttling
+    @GetMapping("/auth-stats")
+    public ResponseEntity<?> getAuthStats(){
+        return new ResponseEntity<>(Map.of("bcrypt", boundedPasswordEncoder.stats(), "loginLimiter", loginRateLimiter.stats(),
+                "hashUpgrades", passwordUpgradeService.stats(), "refreshTokens", refreshTokenService.stats()), HttpStatus.OK);
+    }
+
+
+    //Requests, failures, latency and circuit breaker state of every outside api
+    @GetMapping("/http-stats")
+    public ResponseEntity<?> getHttpStats(){
+        Map<String, Object> stats = vendorHttpClients.stream()
+                .collect(Collectors.toMap(VendorHttpClient::getName, VendorHttpClient::stats));
+        return new ResponseEntity<>(stats, HttpStatus.OK);
+    }
 }
@@ -1,18 +1,30 @@
 package com.learnpr1.journalApp.controller;
 
 
+import com.learnpr1.journalApp.entity.BulkImportReport;
 import  com.learnpr1.journalApp.entity.JournalEntry;
 import com.learnpr1.journalApp.entity.JournalEntryDTO;
+import com.learnpr1.journalApp.entity.JournalEntryRequest;
 import com.learnpr1.journalApp.service.ExternalApiService;
+import com.learnpr1.journalApp.service.JournalBulkService;
+import com.learnpr1.journalApp.service.JournalCalendarService;
 import com.learnpr1.journalApp.service.JournalEntryService;
+import com.learnpr1.journalApp.service.JournalSearchService;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.extern.slf4j.Slf4j;
 import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.*;
 
@@ -28,6 +40,15 @@ public class JournalEntryControllerV2 {
     @Autowired
     private ExternalApiService externalApiService;
 
+    @Autowired
+    private JournalBulkService journalBulkService;
+
+    @Autowired
+    private JournalSearchService journalSearchService;
+
+    @Autowired
+    private JournalCalendarService journalCalendarService;
+
 
     //Display all the entries
     @GetMapping()            //localhost:8080/journal --GET--
@@ -36,15 +57,74 @@ public class JournalEntryControllerV2 {
     }
 
 
+    //Display the entries page by page
+    @GetMapping("/page")            //localhost:8080/journal/page?cursor=...&size=20 --GET--
+    public ResponseEntity<?> getJournalEntriesPage(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size){
+        return journalEntryService.getJournalEntriesPage(cursor, size);
+    }
+
+
 
     //Creates new entries
     @PostMapping()            //localhost:8080/journal --Post--
-    public ResponseEntity<JournalEntry>  createEntry(@RequestBody JournalEntry myentry){
+    public ResponseEntity<JournalEntry>  createEntry(@RequestBody JournalEntryRequest myentry){
         return journalEntryService.saveJournalEntry(myentry);
 
     }
 
 
+    //Entries written between two days (both included), oldest first
+    @GetMapping("/range")            //localhost:8080/journal/range?from=2025-01-01&to=2025-01-31&tz=Asia/Kolkata&cursor=...&size=20 --GET--
+    public ResponseEntity<?> getJournalEntriesInRange(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(required = false) String tz,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size){
+        return journalCalendarService.getEntriesInRange(from, to, tz, cursor, size);
+    }
+
+
+    //How many entries were written per day or month, e.g. for a heatmap of the last year
+    @GetMapping("/calendar")            //localhost:8080/journal/calendar?from=2025-01-01&to=2025-12-31&granularity=day&tz=Asia/Kolkata --GET--
+    public ResponseEntity<?> getJournalCalendar(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(defaultValue = "day") String granularity,
+            @RequestParam(required = false) String tz){
+        LocalDate end = to != null ? to : LocalDate.now();
+        LocalDate start = from != null ? from : end.minusYears(1).plusDays(1);
+        return journalCalendarService.getCalendar(start, end, granularity, tz);
+    }
+
+
+    //Searches the titles and content of the entries, best match first
+    @GetMapping("/search")            //localhost:8080/journal/search?q=...&page=0&size=20&engine=mongo|local --GET--
+    public ResponseEntity<?> searchJournalEntries(
+            @RequestParam String q,
+            @RequestParam(required = false) String engine,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size){
+        return journalSearchService.search(q, engine, page, size);
+    }
+
+
+    //Imports many entries at once, one JSON entry per line
+    @PostMapping(value = "/bulk", consumes = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.TEXT_PLAIN_VALUE})   //localhost:8080/journal/bulk --Post--
+    public ResponseEntity<BulkImportReport> importEntries(HttpServletRequest request) throws IOException {
+        return new ResponseEntity<>(journalBulkService.importEntries(request.getInputStream()), HttpStatus.OK);
+    }
+
+
+    //Downloads all the entries, one JSON entry per line
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)     //localhost:8080/journal/export --GET--
+    public ResponseEntity<StreamingResponseBody> exportEntries(){
+        return new ResponseEntity<>(journalBulkService.exportEntries(), HttpStatus.OK);
+    }
+
+
     // Gets entry by id
     @GetMapping("id/{myId}")
     public ResponseEntity<?> getJournalEntryById(@PathVariable ObjectId myId){
@@ -52,6 +132,22 @@ public class JournalEntryControllerV2 {
     }
 
 
+    // Streams the audio of an entry, send a Range header to get only a part of it
+    @GetMapping("id/{myId}/audio")
+    public ResponseEntity<?> getJournalEntryAudio(
+            @PathVariable ObjectId myId,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String range){
+        return journalEntryService.getJournalEntryAudio(myId, range);
+    }
+
+
+    // Tells if the audio of an entry is PENDING, READY or FAILED
+    @GetMapping("id/{myId}/audio/status")
+    public ResponseEntity<?> getJournalEntryAudioStatus(@PathVariable ObjectId myId){
+        return journalEntryService.getJournalEntryAudioStatus(myId);
+    }
+
+
     //Deletes entry by id
     @DeleteMapping ("id/{myId}")
     public ResponseEntity<String> deleteEntryById(@PathVariable ObjectId myId){
@@ -71,7 +167,7 @@ public class JournalEntryControllerV2 {
     @PutMapping("id/{myId}")
     public ResponseEntity<?> updateJournalEntryById (
             @PathVariable ObjectId myId,
-            @RequestBody JournalEntry myentry){
+            @RequestBody JournalEntryRequest myentry){
         return journalEntryService.updatejournalEntry(myId,myentry);
     }
 
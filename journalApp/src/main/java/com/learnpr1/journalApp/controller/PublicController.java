@@ -1,17 +1,24 @@
 package com.learnpr1.journalApp.controller;
 
 import com.learnpr1.journalApp.entity.AuthResponseDTO;
+import com.learnpr1.journalApp.entity.AuthenticatedUser;
 import com.learnpr1.journalApp.entity.User;
-import com.learnpr1.journalApp.service.UserDetailServiceIMPL;
+import com.learnpr1.journalApp.security.InvalidRefreshTokenException;
+import com.learnpr1.journalApp.security.LoginRateLimiter;
+import com.learnpr1.journalApp.security.PasswordHashingBusyException;
+import com.learnpr1.journalApp.security.RefreshTokenService;
 import com.learnpr1.journalApp.service.UserService;
 import com.learnpr1.journalApp.utils.JwtUtil;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.*;
 
@@ -29,10 +36,13 @@ public class PublicController {
     private AuthenticationManager authenticationManager;
 
     @Autowired
-    private UserDetailServiceIMPL userServiceDetail;
+    private JwtUtil jwtUtil;
 
     @Autowired
-    private JwtUtil jwtUtil;
+    private LoginRateLimiter loginRateLimiter;
+
+    @Autowired
+    private RefreshTokenService refreshTokenService;
 
 
     @GetMapping("/health-check")  //mapping it with it, whenever we go to this url
@@ -45,34 +55,60 @@ public class PublicController {
 
     //Creates new entries
     @PostMapping("/signup")            //localhost:8080/journal --Post--
-    public ResponseEntity<User> signup(@RequestBody User user){
-
+    public ResponseEntity<?> signup(@RequestBody User user, HttpServletRequest request){
+        if (!loginRateLimiter.tryAcquire(user.getUsername(), request.getRemoteAddr())) {
+            return tooManyAttempts();
+        }
         return userService.createNewUser(user);
     }
 
     @PostMapping("/login")            //localhost:8080/journal --Post--
-    public ResponseEntity<?> login(@RequestBody User user){
+    public ResponseEntity<?> login(@RequestBody User user, HttpServletRequest request){
+        if (!loginRateLimiter.tryAcquire(user.getUsername(), request.getRemoteAddr())) {
+            return tooManyAttempts();
+        }
         try {
-            authenticationManager.authenticate(
+            // the authenticated principal already carries the id and roles, no second lookup is needed
+            Authentication authentication = authenticationManager.authenticate(
                     new UsernamePasswordAuthenticationToken(user.getUsername(), user.getPassword()));
-            UserDetails userDetails=userServiceDetail.loadUserByUsername(user.getUsername());
-            String username = userDetails.getUsername();
-            String jwt=jwtUtil.generateToken(username);
-            String refreshToken=jwtUtil.generateRefreshToken(username);
+            AuthenticatedUser userDetails = (AuthenticatedUser) authentication.getPrincipal();
+            String jwt=jwtUtil.generateToken(userDetails);
+            String refreshToken=refreshTokenService.issue(userDetails);
 
             AuthResponseDTO authResponse = new AuthResponseDTO(jwt, refreshToken);
             return new ResponseEntity<>(authResponse, HttpStatus.OK);
 
         }
         catch (Exception e) {
+            // the password check could not even run, that is not a wrong password
+            if (e instanceof PasswordHashingBusyException || e.getCause() instanceof PasswordHashingBusyException) {
+                return new ResponseEntity<>("Server is busy, try again", HttpStatus.SERVICE_UNAVAILABLE);
+            }
             log.error("Exception occurred while creating Authentication token", e.getMessage());
             return new ResponseEntity<>("Invalid username or password", HttpStatus.BAD_REQUEST);
         }
     }
 
+    private ResponseEntity<?> tooManyAttempts() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(loginRateLimiter.retryAfterSeconds()));
+        return new ResponseEntity<>("Too many attempts, try again later", headers, HttpStatus.TOO_MANY_REQUESTS);
+    }
+
+    //Swaps a refresh token for a new access token and a new refresh token, the old refresh token stops working
     @PostMapping("/refresh-token")
-    public ResponseEntity<String> refreshToken(@RequestBody Map<String, String> body) {
-        String token = body.get("token");
-        return new ResponseEntity<>(jwtUtil.returnAccessToken(token), HttpStatus.OK);
+    public ResponseEntity<?> refreshToken(@RequestBody Map<String, String> body) {
+        try {
+            return new ResponseEntity<>(refreshTokenService.rotate(body.get("token")), HttpStatus.OK);
+        } catch (InvalidRefreshTokenException e) {
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.UNAUTHORIZED);
+        }
+    }
+
+    //Ends the login the refresh token belongs to
+    @PostMapping("/logout")
+    public ResponseEntity<?> logout(@RequestBody Map<String, String> body) {
+        refreshTokenService.revoke(body.get("token"));
+        return new ResponseEntity<>(HttpStatus.NO_CONTENT);
     }
 }
@@ -0,0 +1,21 @@
+package com.learnpr1.journalApp.entity;
+
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+
+//What the admin listing shows of a user, never the password hash or the entries themselves
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AdminUserDTO {
+
+    private String id;
+    private String username;
+    private List<String> roles;
+    private long entryCount;
+}
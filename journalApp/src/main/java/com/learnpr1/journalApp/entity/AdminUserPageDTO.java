@@ -0,0 +1,21 @@
+package com.learnpr1.journalApp.entity;
+
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+
+//One page of the admin user listing, ask for page + 1 while hasMore is true
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AdminUserPageDTO {
+
+    private List<AdminUserDTO> users;
+    private int page;
+    private int size;
+    private boolean hasMore;
+}
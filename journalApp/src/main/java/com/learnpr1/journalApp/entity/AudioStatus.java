@@ -0,0 +1,10 @@
+package com.learnpr1.journalApp.entity;
+
+
+//Where the text to speech of an entry is at, the client can poll it after saving an entry
+public enum AudioStatus {
+    NONE,       //no audio was asked for (old entries)
+    PENDING,    //a job is queued or running
+    READY,      //audioRef points to the latest audio
+    FAILED      //all the retries failed
+}
@@ -0,0 +1,29 @@
+package com.learnpr1.journalApp.entity;
+
+
+import lombok.Getter;
+import org.bson.types.ObjectId;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.util.Collection;
+import java.util.List;
+
+//The principal put in the SecurityContext, same as spring's User but it also knows the mongo id of the user
+//It is built from the JWT claims (stateless mode) or from the users collection
+@Getter
+public class AuthenticatedUser extends org.springframework.security.core.userdetails.User {
+
+    private final ObjectId id;
+    private final List<String> roleNames;
+
+    public AuthenticatedUser(ObjectId id, String username, String password, List<String> roleNames) {
+        super(username, password, toAuthorities(roleNames != null ? roleNames : List.of()));
+        this.id = id;
+        this.roleNames = roleNames != null ? List.copyOf(roleNames) : List.of();
+    }
+
+    // same as User.builder().roles(...), every role becomes ROLE_<name>
+    private static Collection<SimpleGrantedAuthority> toAuthorities(List<String> roleNames) {
+        return roleNames.stream().map(role -> new SimpleGrantedAuthority("ROLE_" + role)).toList();
+    }
+}
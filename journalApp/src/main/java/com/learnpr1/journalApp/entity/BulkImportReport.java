@@ -0,0 +1,30 @@
+package com.learnpr1.journalApp.entity;
+
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+//Result of a /journal/bulk import
+//failed counts every line that was not imported, errors keeps only the first few so a bad file can't fill the heap
+@Data
+@NoArgsConstructor
+public class BulkImportReport {
+
+    private long imported;
+    private long failed;
+    private List<LineError> errors = new ArrayList<>();
+    private boolean errorsTruncated;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class LineError {
+        private long line;
+        private String error;
+    }
+}
@@ -0,0 +1,17 @@
+package com.learnpr1.journalApp.entity;
+
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+
+//Number of entries written in one day ("2024-05-31") or month ("2024-05") of the calendar
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class JournalActivityDTO {
+
+    private String period;
+    private long count;
+}
@@ -5,6 +5,8 @@ import lombok.*;
 import lombok.extern.slf4j.Slf4j;
 import org.bson.types.ObjectId;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.LocalDate;
@@ -13,6 +15,10 @@ import java.util.Date;
 
 @Document  (collation = "en") //Tells spring that this is mapped to mongodb
 // its instance will be equal to a document
+@CompoundIndex(name = "owner_id", def = "{ 'ownerId': 1, '_id': -1 }") //all of a user's entries, newest first
+@CompoundIndex(name = "owner_date", def = "{ 'ownerId': 1, 'date': 1 }") //date ranges and the calendar
+//full text search within one user's entries, text indexes don't support the "en" collation so it is created with simple
+@CompoundIndex(name = "owner_text", def = "{ 'ownerId': 1, 'title': 'text', 'content': 'text' }", collation = "simple")
 
 //Lombok annotations
 //@Getter
@@ -35,7 +41,18 @@ public class JournalEntry {
     private String title;
     private String content;
     private LocalDateTime date;
-    private byte[] audioFile; //for storing audio file in byte array
+
+    //the user who wrote the entry, the user document no longer keeps a list of its entries
+    private ObjectId ownerId;
+
+    //the audio itself lives in the AudioStore, the entry only keeps where to find it
+    @Indexed(sparse = true) //TtsCache.collectUnused keeps the cached audio an entry still points to
+    private String audioRef;
+    private Long audioLength;
+    private String audioHash; //sha-256 of the audio bytes
+    private AudioStatus audioStatus;
+    private long audioRevision; //goes up on every text change, a tts job only attaches audio for its own revision
+    private String audioKey;    //TtsCache key of the text the audio is (being) made for
 
 
 
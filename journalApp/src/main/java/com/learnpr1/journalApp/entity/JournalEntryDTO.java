@@ -17,13 +17,19 @@ public class JournalEntryDTO {
     private String title;
     private String content;
     private LocalDateTime date;
-    private byte[] audioFile;
+    private boolean hasAudio;
+    private AudioStatus audioStatus;
+    private Long audioLength;
+    private String audioUrl; //stream the audio from here instead of sending it inside the json
 
     public JournalEntryDTO(JournalEntry entry) {
         this.id = entry.getId().toHexString(); // convert ObjectId to string
         this.title = entry.getTitle();
         this.content = entry.getContent();
         this.date = entry.getDate();
-        this.audioFile = entry.getAudioFile();
+        this.hasAudio = entry.getAudioRef() != null;
+        this.audioLength = entry.getAudioLength();
+        this.audioStatus = entry.getAudioStatus() != null ? entry.getAudioStatus() : AudioStatus.NONE;
+        this.audioUrl = hasAudio ? "/journal/id/" + this.id + "/audio" : null;
     }
 }
@@ -0,0 +1,22 @@
+package com.learnpr1.journalApp.entity;
+
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+
+//One line of the NDJSON used by /journal/export and /journal/bulk
+//id is only written by the export, an import always gives the entry a new id
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class JournalEntryLine {
+
+    private String id;
+    private String title;
+    private String content;
+    private LocalDateTime date;
+}
@@ -0,0 +1,18 @@
+package com.learnpr1.journalApp.entity;
+
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+
+//Body of POST /journal and PUT /journal/id/{myId}, the only fields a client may set on an entry
+//Everything else (id, owner, date, the audio fields) is decided by the server
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class JournalEntryRequest {
+
+    private String title;
+    private String content;
+}
@@ -0,0 +1,20 @@
+package com.learnpr1.journalApp.entity;
+
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+
+//Lightweight view of an entry used by the paginated listing
+//Only id/title/date and a short piece of the content are read from mongo, no audio
+@NoArgsConstructor          //IMP -- it is needed for conversion of mongo document to POJO
+@Data
+public class JournalEntrySummary {
+
+    private String id;
+    private String title;
+    private LocalDateTime date;
+    private String snippet;
+}
@@ -0,0 +1,23 @@
+package com.learnpr1.journalApp.entity;
+
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.mongodb.core.mapping.TextScore;
+
+import java.time.LocalDateTime;
+
+
+//An entry read by a mongo $text search together with its relevance score
+@NoArgsConstructor
+@Data
+public class JournalEntryTextMatch {
+
+    private String id;
+    private String title;
+    private String content;
+    private LocalDateTime date;
+
+    @TextScore
+    private Float score;
+}
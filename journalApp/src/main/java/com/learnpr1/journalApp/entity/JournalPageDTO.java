@@ -0,0 +1,20 @@
+package com.learnpr1.journalApp.entity;
+
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+
+//One page of the journal listing
+//nextCursor is null when there are no more entries, otherwise pass it back as ?cursor= to get the next page
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class JournalPageDTO {
+
+    private List<JournalEntrySummary> entries;
+    private String nextCursor;
+}
@@ -0,0 +1,22 @@
+package com.learnpr1.journalApp.entity;
+
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+
+//One result of /journal/search, score is only comparable between hits of the same search
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class JournalSearchHit {
+
+    private String id;
+    private String title;
+    private LocalDateTime date;
+    private String snippet;
+    private double score;
+}
@@ -0,0 +1,24 @@
+package com.learnpr1.journalApp.entity;
+
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+
+//One page of search results, best match first
+//engine is "mongo" or "local", tookMs is the time spent in the engine (handy to compare the two)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class JournalSearchPageDTO {
+
+    private String engine;
+    private int page;
+    private int size;
+    private boolean hasMore;
+    private long tookMs;
+    private List<JournalSearchHit> hits;
+}
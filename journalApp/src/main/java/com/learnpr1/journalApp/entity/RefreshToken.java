@@ -0,0 +1,29 @@
+package com.learnpr1.journalApp.entity;
+
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.bson.types.ObjectId;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+@Document(collection = "refresh_tokens") //One document per refresh token handed out, mongo drops it once it expires
+@NoArgsConstructor
+@Data
+public class RefreshToken {
+
+    @Id
+    private String id;          //the jti claim of the token
+    private ObjectId userId;
+    private String username;
+    @Indexed
+    private String familyId;    //same for every token rotated out of one login, reuse of an old one revokes them all
+    private Instant issuedAt;
+    @Indexed(name = "expiresAt_ttl", expireAfter = "0s")
+    private Instant expiresAt;
+    private Instant usedAt;     //set when the token was exchanged for a new one
+    private Instant revokedAt;  //set on logout or when the family was revoked
+}
@@ -0,0 +1,29 @@
+package com.learnpr1.journalApp.entity;
+
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+@Document(collection = "tts_cache") //Persistent tier of TtsCache, one document per distinct text+voice
+@NoArgsConstructor
+@AllArgsConstructor
+@Data
+public class TtsCacheEntry {
+
+    @Id
+    private String key;         //sha-256 of the normalized title, content and voice_id
+
+    @Indexed
+    private String audioRef;    //audio in the AudioStore, shared by every entry with the same text
+    private long audioLength;
+    private String audioHash;
+    private Instant createdAt;
+    @Indexed
+    private Instant lastUsedAt;  //bumped when the key is used, TtsCache.collectUnused deletes the keys unused for too long
+}
@@ -0,0 +1,48 @@
+package com.learnpr1.journalApp.entity;
+
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.bson.types.ObjectId;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+@Document(collection = "tts_jobs") //Persisted queue of text to speech work, survives restarts
+@CompoundIndex(name = "status_nextAttemptAt", def = "{'status': 1, 'nextAttemptAt': 1}")
+@NoArgsConstructor
+@Data
+public class TtsJob {
+
+    public enum Status {
+        QUEUED,     //waiting for nextAttemptAt
+        RUNNING,    //claimed by a worker till lockedUntil, after that any worker can claim it again
+        DONE,
+        FAILED
+    }
+
+    @Id
+    private ObjectId id;
+    private ObjectId entryId;
+    private long revision;      //audioRevision of the entry when the job was queued
+    private Status status;
+    private int attempts;
+    private Instant nextAttemptAt;
+    private Instant lockedUntil;
+    private String lastError;
+    private Instant createdAt;
+    //set when the job is DONE or FAILED, mongo drops finished jobs a week later
+    @Indexed(name = "finishedAt_ttl", expireAfter = "7d")
+    private Instant finishedAt;
+
+    public TtsJob(ObjectId entryId, long revision) {
+        this.entryId = entryId;
+        this.revision = revision;
+        this.status = Status.QUEUED;
+        this.createdAt = Instant.now();
+        this.nextAttemptAt = this.createdAt;
+    }
+}
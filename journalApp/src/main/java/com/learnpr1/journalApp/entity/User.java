@@ -6,11 +6,9 @@ import lombok.NonNull;
 import org.bson.types.ObjectId;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.index.Indexed;
-import org.springframework.data.mongodb.core.mapping.DBRef;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.LocalDateTime;
-import java.util.ArrayList;
 import java.util.List;
 
 @Data
@@ -25,12 +23,10 @@ public class User {
     @NonNull
     private String password;
 
-    @DBRef      //It will keep the reference of the Enteryes in the journalEntries
-                //ex journalEntryList:[ DBRef ("journalentries",ObjectID("5948357492394"))
-
-                //Only embedding the ID and not the whole entry
-    private List<JournalEntry> journalEntryList=new ArrayList<>();
+    //Entries are not listed here any more, each JournalEntry keeps the ownerId of its user
+    //Old documents still having a journalEntryList are moved over by EntryOwnerMigration
 
     //role of the user
+    @Indexed    //the admin listing filters on it
     private List<String>roles;
 }
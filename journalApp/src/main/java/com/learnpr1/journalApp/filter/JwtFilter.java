@@ -1,7 +1,11 @@
 package com.learnpr1.journalApp.filter;
 
 
+import com.learnpr1.journalApp.Cache.UserDetailsCache;
 import com.learnpr1.journalApp.utils.JwtUtil;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 import jakarta.servlet.FilterChain;
@@ -10,20 +14,26 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 
 import java.io.IOException;
 
 
+@Slf4j
 @Component
 public class JwtFilter extends OncePerRequestFilter {
 
     @Autowired
-    private UserDetailsService userDetailsService;
+    private UserDetailsCache userDetailsCache;
+
+    //true: trust the roles in the token, false: check the user in mongo (cached for auth.user-cache.ttl-ms)
+    @Value("${jwt.stateless:true}")
+    private boolean stateless;
 
     @Autowired
     private JwtUtil jwtUtil;
@@ -31,18 +41,29 @@ public class JwtFilter extends OncePerRequestFilter {
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain) throws ServletException, IOException {
         String authorizationHeader = request.getHeader("Authorization");
-        String username = null;
-        String jwt = null;
+        Claims claims = null;
         if (authorizationHeader != null && authorizationHeader.startsWith("Bearer ")) {
-            jwt = authorizationHeader.substring(7);
-            username = jwtUtil.extractUsername(jwt);
+            String jwt = authorizationHeader.substring(7);
+            // one verified parse checks the signature, the expiry and that it is not a refresh token,
+            // a bad token just leaves the request unauthenticated
+            try {
+                claims = jwtUtil.parseVerified(jwt);
+            } catch (JwtException | IllegalArgumentException e) {
+                log.debug("Rejected JWT: {}", e.getMessage());
+            }
         }
-        if (username != null) {
-            UserDetails userDetails = userDetailsService.loadUserByUsername(username);
-            if (jwtUtil.validateToken(jwt)) {
+        if (claims != null) {
+            // stateless: the roles and id come from the token, otherwise the user is looked up (through a short cache)
+            UserDetails userDetails = stateless ? jwtUtil.toPrincipal(claims) : null;
+            try {
+                if (userDetails == null) {
+                    userDetails = userDetailsCache.get(claims.getSubject());
+                }
                 UsernamePasswordAuthenticationToken auth = new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
                 auth.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
                 SecurityContextHolder.getContext().setAuthentication(auth);
+            } catch (UsernameNotFoundException e) {
+                log.debug("Token of a user that no longer exists: {}", e.getMessage());
             }
         }
         chain.doFilter(request, response);
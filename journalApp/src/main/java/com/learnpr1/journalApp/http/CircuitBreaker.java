@@ -0,0 +1,55 @@
+package com.learnpr1.journalApp.http;
+
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Stops calling a vendor that keeps failing
+// CLOSED: calls go through, failureThreshold failures in a row open the breaker
+// OPEN: calls fail right away for openMs
+// HALF_OPEN: one trial call goes through, success closes the breaker, failure opens it again
+public class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int failureThreshold;
+    private final long openMs;
+
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final AtomicBoolean trialRunning = new AtomicBoolean();
+    private volatile long openedAt = -1;
+
+    public CircuitBreaker(int failureThreshold, long openMs) {
+        this.failureThreshold = failureThreshold;
+        this.openMs = openMs;
+    }
+
+    public State getState() {
+        long opened = openedAt;
+        if (opened < 0) {
+            return State.CLOSED;
+        }
+        return System.currentTimeMillis() - opened >= openMs ? State.HALF_OPEN : State.OPEN;
+    }
+
+    //true when the call may go out, a HALF_OPEN breaker lets only one call through at a time
+    public boolean tryAcquire() {
+        State state = getState();
+        if (state == State.CLOSED) {
+            return true;
+        }
+        return state == State.HALF_OPEN && trialRunning.compareAndSet(false, true);
+    }
+
+    public void onSuccess() {
+        consecutiveFailures.set(0);
+        openedAt = -1;
+        trialRunning.set(false);
+    }
+
+    public void onFailure() {
+        if (trialRunning.getAndSet(false) || consecutiveFailures.incrementAndGet() >= failureThreshold) {
+            openedAt = System.currentTimeMillis();
+        }
+    }
+}
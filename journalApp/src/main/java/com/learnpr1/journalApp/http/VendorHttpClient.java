@@ -0,0 +1,247 @@
+package com.learnpr1.journalApp.http;
+
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Outbound http for one vendor (speechify, weatherstack ...), every vendor gets its own instance from HttpClientConfig
+// - own jdk HttpClient, so its own keep-alive connection pool
+// - bulkhead: at most maxConcurrent calls in flight, which also caps the connections the pool opens
+// - circuit breaker so a dead vendor fails fast instead of tying up threads
+// - request timeout for the response headers, call timeout for the whole call: a body still being read when it runs
+//   out is closed and the permit given back, the jdk timeout alone stops counting once the headers are in
+// - counters for requests, failures, rejections, stalled bodies and latency
+// - metrics: vendor.http.requests timer (tags vendor, outcome), vendor.http.rejected (tags vendor, reason),
+//   vendor.http.in.flight and vendor.http.circuit.open gauges
+@Slf4j
+public class VendorHttpClient {
+
+    //Reads the response, the bulkhead permit is held till it returns so a streamed body counts as in flight
+    //A streamed body not read within the call timeout is closed under it and the exchange fails with an HttpTimeoutException
+    @FunctionalInterface
+    public interface ResponseHandler<T, R> {
+        R handle(HttpResponse<T> response) throws IOException;
+    }
+
+    private final String name;
+    private final HttpClient httpClient;
+    private final Duration requestTimeout;
+    private final Duration callTimeout;
+    private final int maxConcurrent;
+    private final Semaphore bulkhead;
+    private final long bulkheadWaitMs;
+    private final CircuitBreaker circuitBreaker;
+    private final MeterRegistry meterRegistry;
+    private final Counter bulkheadRejections;
+    private final Counter circuitRejections;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong shortCircuited = new AtomicLong();
+    private final AtomicLong stalled = new AtomicLong();
+    private final AtomicLong totalLatencyNanos = new AtomicLong();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    // closes the bodies that ran out of time, one thread for every vendor, it only ever calls close()
+    private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("vendor-http-watchdog").daemon().factory());
+
+    public VendorHttpClient(String name, Duration connectTimeout, Duration requestTimeout, Duration callTimeout, int maxConcurrent,
+                            long bulkheadWaitMs, CircuitBreaker circuitBreaker, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(connectTimeout)
+                .executor(Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("http-" + name + "-", 0).factory()))
+                .build();
+        this.requestTimeout = requestTimeout;
+        this.callTimeout = callTimeout;
+        this.maxConcurrent = maxConcurrent;
+        this.bulkhead = new Semaphore(maxConcurrent);
+        this.bulkheadWaitMs = bulkheadWaitMs;
+        this.circuitBreaker = circuitBreaker;
+        this.meterRegistry = meterRegistry;
+        this.bulkheadRejections = rejectionCounter("bulkhead");
+        this.circuitRejections = rejectionCounter("circuit_open");
+        Gauge.builder("vendor.http.in.flight", bulkhead, permits -> maxConcurrent - permits.availablePermits())
+                .tag("vendor", name)
+                .register(meterRegistry);
+        Gauge.builder("vendor.http.circuit.open", circuitBreaker, breaker -> breaker.getState() == CircuitBreaker.State.OPEN ? 1 : 0)
+                .tag("vendor", name)
+                .register(meterRegistry);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    //Builder with the vendor's request timeout already set
+    public HttpRequest.Builder request(URI uri) {
+        return HttpRequest.newBuilder(uri).timeout(requestTimeout);
+    }
+
+    //Sends the request and hands the response to the handler
+    //5xx answers, calls that got no answer and bodies that stalled count as failures for the circuit breaker, 4xx answers don't
+    public <T, R> R exchange(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler,
+                             ResponseHandler<T, R> responseHandler) throws IOException, InterruptedException {
+        if (!bulkhead.tryAcquire(bulkheadWaitMs, TimeUnit.MILLISECONDS)) {
+            rejected.incrementAndGet();
+            bulkheadRejections.increment();
+            throw new VendorUnavailableException(name + " has too many calls in flight");
+        }
+        if (!circuitBreaker.tryAcquire()) {
+            bulkhead.release();
+            shortCircuited.incrementAndGet();
+            circuitRejections.increment();
+            throw new VendorUnavailableException(name + " circuit breaker is open");
+        }
+        requests.incrementAndGet();
+        long start = System.nanoTime();
+        int status = -1;
+        AtomicBoolean permitHeld = new AtomicBoolean(true);
+        AtomicBoolean bodyStalled = new AtomicBoolean();
+        try {
+            HttpResponse<T> response = send(request, bodyHandler);
+            status = response.statusCode();
+            if (!(response.body() instanceof Closeable body)) {
+                return responseHandler.handle(response);
+            }
+            long remainingNanos = Math.max(0, start + callTimeout.toNanos() - System.nanoTime());
+            ScheduledFuture<?> watchdog = WATCHDOG.schedule(() -> abandon(body, permitHeld, bodyStalled), remainingNanos, TimeUnit.NANOSECONDS);
+            R result;
+            try {
+                result = responseHandler.handle(response);
+            } finally {
+                watchdog.cancel(false);
+            }
+            // a closed body can also read as a clean end of stream, what the handler made of it is not kept
+            if (bodyStalled.get()) {
+                throw new HttpTimeoutException(name + " body not read within " + callTimeout.toMillis() + "ms");
+            }
+            return result;
+        } finally {
+            releasePermit(permitHeld);
+            if (bodyStalled.get()) {
+                status = -1;
+            }
+            recordLatency(System.nanoTime() - start, status);
+            if (status == -1 || status >= 500) {
+                failures.incrementAndGet();
+                circuitBreaker.onFailure();
+            } else {
+                circuitBreaker.onSuccess();
+            }
+        }
+    }
+
+    //The whole answer of a buffered body, or the headers of a streamed one, has to be in within the call timeout
+    private <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler) throws IOException, InterruptedException {
+        CompletableFuture<HttpResponse<T>> call = httpClient.sendAsync(request, bodyHandler);
+        try {
+            return call.get(callTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            call.cancel(true);
+            throw new HttpTimeoutException(name + " did not answer within " + callTimeout.toMillis() + "ms");
+        } catch (InterruptedException e) {
+            call.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    //Runs on the watchdog: the body is closed so the reader gets an IOException, and the permit is given back
+    //right away in case the reader is stuck somewhere else
+    private void abandon(Closeable body, AtomicBoolean permitHeld, AtomicBoolean bodyStalled) {
+        bodyStalled.set(true);
+        stalled.incrementAndGet();
+        log.warn("{} body not read within {}ms, closing it", name, callTimeout.toMillis());
+        try {
+            body.close();
+        } catch (IOException e) {
+            log.warn("Could not close the {} body: {}", name, e.getMessage());
+        }
+        releasePermit(permitHeld);
+    }
+
+    //The handler's thread and the watchdog can both get here, only the first one gives the permit back
+    private void releasePermit(AtomicBoolean permitHeld) {
+        if (permitHeld.compareAndSet(true, false)) {
+            bulkhead.release();
+        }
+    }
+
+    public Map<String, Object> stats() {
+        long count = requests.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("requests", count);
+        stats.put("failures", failures.get());
+        stats.put("rejected", rejected.get());
+        stats.put("shortCircuited", shortCircuited.get());
+        stats.put("stalled", stalled.get());
+        stats.put("inFlight", maxConcurrent - bulkhead.availablePermits());
+        stats.put("avgLatencyMs", count == 0 ? 0.0 : totalLatencyNanos.get() / 1_000_000.0 / count);
+        stats.put("maxLatencyMs", maxLatencyNanos.get() / 1_000_000.0);
+        stats.put("circuit", circuitBreaker.getState());
+        return stats;
+    }
+
+    private void recordLatency(long nanos, int status) {
+        totalLatencyNanos.addAndGet(nanos);
+        maxLatencyNanos.accumulateAndGet(nanos, Math::max);
+        // register() hands back the timer that already exists for these tags
+        Timer.builder("vendor.http.requests")
+                .tag("vendor", name)
+                .tag("outcome", outcome(status))
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    private static String outcome(int status) {
+        if (status == -1) {
+            return "IO_ERROR";
+        }
+        if (status >= 500) {
+            return "SERVER_ERROR";
+        }
+        return status >= 400 ? "CLIENT_ERROR" : "SUCCESS";
+    }
+
+    private Counter rejectionCounter(String reason) {
+        return Counter.builder("vendor.http.rejected")
+                .tag("vendor", name)
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,12 @@
+package com.learnpr1.journalApp.http;
+
+
+import java.io.IOException;
+
+//Thrown without calling the vendor, because its circuit breaker is open or its bulkhead is full
+public class VendorUnavailableException extends IOException {
+
+    public VendorUnavailableException(String message) {
+        super(message);
+    }
+}
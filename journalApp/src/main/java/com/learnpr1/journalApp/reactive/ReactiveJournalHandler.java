@@ -0,0 +1,292 @@
+package com.learnpr1.journalApp.reactive;
+
+
+import com.learnpr1.journalApp.entity.AudioStatus;
+import com.learnpr1.journalApp.entity.JournalEntry;
+import com.learnpr1.journalApp.entity.JournalEntryDTO;
+import com.learnpr1.journalApp.entity.JournalEntryRequest;
+import com.learnpr1.journalApp.entity.JournalPageDTO;
+import com.learnpr1.journalApp.entity.TtsJob;
+import com.learnpr1.journalApp.repositary.ReactiveJournalEntryRepo;
+import com.learnpr1.journalApp.service.EntryOwnerMigration;
+import com.learnpr1.journalApp.service.JournalEntriesChangedEvent;
+import com.learnpr1.journalApp.service.JournalEntryService;
+import com.learnpr1.journalApp.service.TtsJobQueuedEvent;
+import com.learnpr1.journalApp.service.TtsJobService;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.mongodb.ReactiveMongoDatabaseFactory;
+import org.springframework.data.mongodb.ReactiveMongoTransactionManager;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+// The /journal endpoints of JournalEntryControllerV2 + JournalEntryService without a thread per request
+// Same entities, same collections, same answers, only mongo is read through ReactiveJournalEntryRepo
+// The few blocking calls left (old users' migration, deleting stored audio) go to boundedElastic, never the event loop
+// Text to speech goes through the same tts_jobs queue: the job is inserted with the entry and TtsWorker makes the audio
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "journal.reactive.enabled", havingValue = "true")
+public class ReactiveJournalHandler {
+
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final int SNIPPET_LENGTH = 140;
+    //Upper bound for the first page, every real ObjectId is smaller than this
+    private static final ObjectId FIRST_PAGE_CURSOR = new ObjectId("ffffffffffffffffffffffff");
+
+    @Autowired
+    private ReactiveJournalEntryRepo journalEntryRepo;
+
+    @Autowired
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @Autowired
+    private ReactiveMongoDatabaseFactory reactiveMongoDatabaseFactory;
+
+    @Autowired
+    private EntryOwnerMigration entryOwnerMigration;
+
+    @Autowired
+    private TtsJobService ttsJobService;
+
+    @Autowired
+    private JournalEntryService journalEntryService;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    // not a bean, a second TransactionManager bean would make every @Transactional of the servlet side ambiguous
+    private TransactionalOperator transactions;
+
+    @PostConstruct
+    public void init() {
+        transactions = TransactionalOperator.create(new ReactiveMongoTransactionManager(reactiveMongoDatabaseFactory));
+    }
+
+
+    //GET /journal, the entries go out as mongo returns them, nothing is collected first
+    //Accept: application/x-ndjson gets one entry per line, anything else a JSON array, written as it streams
+    public Mono<ServerResponse> getAllJournalEntries(ServerRequest request) {
+        Flux<JournalEntryDTO> entries = ownerId(request)
+                .flatMapMany(journalEntryRepo::findByOwnerIdOrderByIdAsc)
+                .map(JournalEntryDTO::new);
+        MediaType type = request.headers().accept().contains(MediaType.APPLICATION_NDJSON)
+                ? MediaType.APPLICATION_NDJSON
+                : MediaType.APPLICATION_JSON;
+        return ServerResponse.ok().contentType(type).body(entries, JournalEntryDTO.class);
+    }
+
+
+    //GET /journal/page?cursor=...&size=20, see JournalEntryService.getJournalEntriesPage
+    public Mono<ServerResponse> getJournalEntriesPage(ServerRequest request) {
+        ObjectId before = FIRST_PAGE_CURSOR;
+        String cursor = request.queryParam("cursor").orElse(null);
+        if (cursor != null && !cursor.isEmpty()) {
+            if (!ObjectId.isValid(cursor)) {
+                return ServerResponse.badRequest().bodyValue("Invalid cursor");
+            }
+            before = new ObjectId(cursor);
+        }
+        int size;
+        try {
+            size = Integer.parseInt(request.queryParam("size").orElse("20"));
+        } catch (NumberFormatException e) {
+            return ServerResponse.badRequest().build();
+        }
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+
+        ObjectId upperBound = before;
+        // ask for one extra row, if it comes back there is a next page
+        return ownerId(request)
+                .flatMap(ownerId -> journalEntryRepo.findSummariesBefore(ownerId, upperBound, pageSize + 1, SNIPPET_LENGTH).collectList())
+                .flatMap(rows -> {
+                    String nextCursor = null;
+                    if (rows.size() > pageSize) {
+                        rows = rows.subList(0, pageSize);
+                        nextCursor = rows.get(pageSize - 1).getId();
+                    }
+                    return ServerResponse.ok().bodyValue(new JournalPageDTO(rows, nextCursor));
+                });
+    }
+
+
+    //POST /journal, the entry and its tts job are inserted in one transaction
+    //Only title and content come from the body, the entry itself is built here like in JournalEntryService
+    public Mono<ServerResponse> createEntry(ServerRequest request) {
+        ObjectId ownerId = ReactiveJwtAuthentication.principal(request).getId();
+        return request.bodyToMono(JournalEntryRequest.class)
+                .flatMap(body -> {
+                    JournalEntry journalEntry = new JournalEntry();
+                    journalEntry.setTitle(body.getTitle());
+                    journalEntry.setContent(body.getContent());
+                    journalEntry.setDate(LocalDateTime.now());
+                    journalEntry.setOwnerId(ownerId);
+                    // the id is set here so the tts job can point to the entry
+                    journalEntry.setId(new ObjectId());
+                    // always a job, the worker still takes the audio from the tts cache when it is there
+                    TtsJob job = ttsJobService.prepareAudio(journalEntry, 0);
+                    return journalEntryRepo.insert(journalEntry)
+                            .flatMap(saved -> reactiveMongoTemplate.insert(job).thenReturn(saved))
+                            .as(transactions::transactional)
+                            .doOnNext(saved -> {
+                                eventPublisher.publishEvent(new JournalEntriesChangedEvent(ownerId));
+                                eventPublisher.publishEvent(new TtsJobQueuedEvent(job.getId()));
+                            });
+                })
+                .flatMap(saved -> ServerResponse.status(HttpStatus.CREATED).bodyValue(saved))
+                .switchIfEmpty(Mono.defer(() -> ServerResponse.badRequest().build()))
+                .onErrorResume(e -> {
+                    log.debug("Could not save entry: {}", e.getMessage());
+                    return ServerResponse.badRequest().build();
+                });
+    }
+
+
+    //GET /journal/id/{myId}
+    public Mono<ServerResponse> getJournalEntryById(ServerRequest request) {
+        ObjectId id = pathId(request);
+        if (id == null) {
+            return ServerResponse.badRequest().build();
+        }
+        return findOwnedEntry(request, id)
+                .flatMap(entry -> ServerResponse.ok().bodyValue(new JournalEntryDTO(entry)))
+                .switchIfEmpty(Mono.defer(() -> notOwnedStatus(id).flatMap(status -> ServerResponse.status(status).build())));
+    }
+
+
+    //GET /journal/id/{myId}/audio/status
+    public Mono<ServerResponse> getJournalEntryAudioStatus(ServerRequest request) {
+        ObjectId id = pathId(request);
+        if (id == null) {
+            return ServerResponse.badRequest().build();
+        }
+        return findOwnedEntry(request, id)
+                .flatMap(entry -> {
+                    AudioStatus status = entry.getAudioStatus() != null ? entry.getAudioStatus() : AudioStatus.NONE;
+                    return ServerResponse.ok().bodyValue(Map.of("audioStatus", status, "hasAudio", entry.getAudioRef() != null));
+                })
+                .switchIfEmpty(Mono.defer(() -> notOwnedStatus(id).flatMap(status -> ServerResponse.status(status).build())));
+    }
+
+
+    //PUT /journal/id/{myId}, a new tts job only when the text changed, see TtsJobService.requestAudio
+    //Only title, content and the audio bookkeeping are written, with a $set on the revision that was read,
+    //so audio TtsWorker attaches meanwhile is kept and an edit made meanwhile is not overwritten (409)
+    public Mono<ServerResponse> updateJournalEntry(ServerRequest request) {
+        ObjectId id = pathId(request);
+        if (id == null) {
+            return ServerResponse.badRequest().build();
+        }
+        return request.bodyToMono(JournalEntryRequest.class)
+                .flatMap(updatedEntry -> findOwnedEntry(request, id)
+                        .flatMap(oldEntry -> {
+                            long revision = oldEntry.getAudioRevision();
+                            oldEntry.setTitle(updatedEntry.getTitle() != null && !updatedEntry.getTitle().isEmpty() ? updatedEntry.getTitle() : oldEntry.getTitle());
+                            oldEntry.setContent(updatedEntry.getContent() != null && !updatedEntry.getContent().isEmpty() ? updatedEntry.getContent() : oldEntry.getContent());
+                            Update update = new Update()
+                                    .set("title", oldEntry.getTitle())
+                                    .set("content", oldEntry.getContent());
+                            // same text as before costs nothing, otherwise the old audio stays playable till the new one is attached
+                            TtsJob job = null;
+                            if (!ttsJobService.audioIsCurrent(oldEntry)) {
+                                job = ttsJobService.prepareAudio(oldEntry, 0);
+                                update.set("audioRevision", oldEntry.getAudioRevision())
+                                        .set("audioKey", oldEntry.getAudioKey())
+                                        .set("audioStatus", oldEntry.getAudioStatus());
+                            }
+                            // entries from before audioRevision existed don't have the field, $in with null matches those
+                            Query unchanged = new Query(Criteria.where("_id").is(id).and("ownerId").is(oldEntry.getOwnerId())
+                                    .and("audioRevision").in(revision == 0 ? Arrays.asList(0L, null) : List.of(revision)));
+                            TtsJob queued = job;
+                            Mono<Boolean> write = reactiveMongoTemplate.updateFirst(unchanged, update, JournalEntry.class)
+                                    .flatMap(result -> result.getMatchedCount() == 0 || queued == null
+                                            ? Mono.just(result.getMatchedCount() > 0)
+                                            : reactiveMongoTemplate.insert(queued).thenReturn(true));
+                            return write.as(transactions::transactional)
+                                    .flatMap(written -> {
+                                        if (!written) {
+                                            return ServerResponse.status(HttpStatus.CONFLICT).bodyValue("The entry was changed meanwhile, try again");
+                                        }
+                                        eventPublisher.publishEvent(new JournalEntriesChangedEvent(oldEntry.getOwnerId()));
+                                        if (queued != null) {
+                                            eventPublisher.publishEvent(new TtsJobQueuedEvent(queued.getId()));
+                                        }
+                                        return ServerResponse.ok().bodyValue("Entry updated successfully");
+                                    });
+                        })
+                        .switchIfEmpty(Mono.defer(() -> notOwnedStatus(id).flatMap(status -> status == HttpStatus.FORBIDDEN
+                                ? ServerResponse.status(status).bodyValue("This entry belongs to another user")
+                                : ServerResponse.status(status).bodyValue("There was not such Entry")))))
+                .switchIfEmpty(Mono.defer(() -> ServerResponse.badRequest().build()));
+    }
+
+
+    //DELETE /journal/id/{myId}
+    public Mono<ServerResponse> deleteEntryById(ServerRequest request) {
+        ObjectId id = pathId(request);
+        if (id == null) {
+            return ServerResponse.badRequest().bodyValue("ID cannot be null");
+        }
+        log.info("Deleting journal entry with ID: {}", id);
+        return findOwnedEntry(request, id)
+                .flatMap(entry -> journalEntryRepo.deleteById(id)
+                        .then(Mono.fromRunnable(() -> eventPublisher.publishEvent(new JournalEntriesChangedEvent(entry.getOwnerId()))))
+                        .then(Mono.fromRunnable(() -> journalEntryService.deleteAudio(entry.getAudioRef()))
+                                .subscribeOn(Schedulers.boundedElastic()))
+                        .then(ServerResponse.ok().bodyValue("Entry Deleted")))
+                .switchIfEmpty(Mono.defer(() -> notOwnedStatus(id).flatMap(status -> status == HttpStatus.FORBIDDEN
+                        ? ServerResponse.status(HttpStatus.FORBIDDEN).build()
+                        : ServerResponse.noContent().build())));
+    }
+
+
+    //The entry if it exists and belongs to the logged in user, fetched by _id and owner in one query
+    private Mono<JournalEntry> findOwnedEntry(ServerRequest request, ObjectId id) {
+        return ownerId(request).flatMap(ownerId -> journalEntryRepo.findByIdAndOwnerId(id, ownerId));
+    }
+
+    //Only called after findOwnedEntry found nothing, tells a missing entry (404) from someone else's (403)
+    private Mono<HttpStatus> notOwnedStatus(ObjectId id) {
+        return journalEntryRepo.existsById(id).map(exists -> exists ? HttpStatus.FORBIDDEN : HttpStatus.NOT_FOUND);
+    }
+
+    //Id of the logged in user, for reads it first makes sure the user's old entries carry the ownerId
+    //Once the migration is done that is free, before that it is a blocking query, so it runs off the event loop
+    private Mono<ObjectId> ownerId(ServerRequest request) {
+        ObjectId userId = ReactiveJwtAuthentication.principal(request).getId();
+        if (entryOwnerMigration.isDone()) {
+            return Mono.just(userId);
+        }
+        return Mono.fromCallable(() -> {
+                    entryOwnerMigration.ensureMigrated(userId);
+                    return userId;
+                })
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    //null when {myId} is not an ObjectId, the servlet side answers those with a 400 too
+    private static ObjectId pathId(ServerRequest request) {
+        String myId = request.pathVariable("myId");
+        return ObjectId.isValid(myId) ? new ObjectId(myId) : null;
+    }
+}
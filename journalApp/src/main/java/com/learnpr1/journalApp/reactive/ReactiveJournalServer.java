@@ -0,0 +1,108 @@
+package com.learnpr1.journalApp.reactive;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learnpr1.journalApp.Config.SpringSecurity;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.http.server.reactive.ReactorHttpHandlerAdapter;
+import org.springframework.stereotype.Component;
+import org.springframework.web.cors.reactive.CorsWebFilter;
+import org.springframework.web.cors.reactive.UrlBasedCorsConfigurationSource;
+import org.springframework.web.reactive.function.server.HandlerStrategies;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+// Serves the reactive /journal tier on its own netty port (journal.reactive.port, 0 picks a free one)
+// Spring Boot runs one web stack per app, tomcat keeps everything else, including /public/login where the jwt comes from
+// Off unless journal.reactive.enabled=true, then both tiers share the mongo data, the tts queue and the jwt secret
+// Each request is timed as journal.reactive.requests{method, uri, status}, next to tomcat's http.server.requests
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "journal.reactive.enabled", havingValue = "true")
+public class ReactiveJournalServer {
+
+    @Autowired
+    private ReactiveJournalHandler handler;
+
+    @Autowired
+    private ReactiveJwtAuthentication authentication;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${journal.reactive.port:8081}")
+    private int port;
+
+    private DisposableServer server;
+
+    @PostConstruct
+    public void start() {
+        RouterFunction<ServerResponse> routes = RouterFunctions.route()
+                .GET("/journal", handler::getAllJournalEntries)
+                .GET("/journal/page", handler::getJournalEntriesPage)
+                .POST("/journal", handler::createEntry)
+                .GET("/journal/id/{myId}", handler::getJournalEntryById)
+                .GET("/journal/id/{myId}/audio/status", handler::getJournalEntryAudioStatus)
+                .PUT("/journal/id/{myId}", handler::updateJournalEntry)
+                .DELETE("/journal/id/{myId}", handler::deleteEntryById)
+                .filter(authentication)
+                .filter((request, next) -> {
+                    Timer.Sample sample = Timer.start(meterRegistry);
+                    return next.handle(request).doOnNext(response -> sample.stop(Timer.builder("journal.reactive.requests")
+                            .tag("method", request.method().name())
+                            .tag("uri", request.attribute(RouterFunctions.MATCHING_PATTERN_ATTRIBUTE)
+                                    .map(Object::toString).orElse("UNKNOWN"))
+                            .tag("status", String.valueOf(response.statusCode().value()))
+                            .publishPercentileHistogram()
+                            .register(meterRegistry)));
+                })
+                .build();
+
+        // same ObjectMapper as the servlet side, so an entry is written the same way by both
+        HandlerStrategies strategies = HandlerStrategies.builder()
+                .codecs(codecs -> {
+                    codecs.defaultCodecs().jackson2JsonEncoder(new Jackson2JsonEncoder(objectMapper));
+                    codecs.defaultCodecs().jackson2JsonDecoder(new Jackson2JsonDecoder(objectMapper));
+                })
+                .webFilter(new CorsWebFilter(corsConfigurationSource()))
+                .build();
+
+        server = HttpServer.create()
+                .port(port)
+                .handle(new ReactorHttpHandlerAdapter(RouterFunctions.toHttpHandler(routes, strategies)))
+                .bindNow();
+        log.info("Reactive journal api listening on port {}", server.port());
+    }
+
+    //The port it is bound to, useful when journal.reactive.port is 0
+    public int getPort() {
+        return server.port();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (server != null) {
+            server.disposeNow();
+        }
+    }
+
+    private static UrlBasedCorsConfigurationSource corsConfigurationSource() {
+        UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
+        source.registerCorsConfiguration("/**", SpringSecurity.corsConfiguration());
+        return source;
+    }
+}
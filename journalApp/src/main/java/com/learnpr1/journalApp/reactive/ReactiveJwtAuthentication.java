@@ -0,0 +1,86 @@
+package com.learnpr1.journalApp.reactive;
+
+import com.learnpr1.journalApp.Cache.UserDetailsCache;
+import com.learnpr1.journalApp.entity.AuthenticatedUser;
+import com.learnpr1.journalApp.utils.JwtUtil;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.HandlerFilterFunction;
+import org.springframework.web.reactive.function.server.HandlerFunction;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+// JwtFilter + ".requestMatchers("/journal/**").authenticated()" for the reactive tier, which is not behind spring security
+// Same token rules: a valid access token, refresh tokens are not a way in, in stateless mode the principal comes from
+// the claims, otherwise (or for an old token without claims) from the UserDetailsCache on a worker thread
+// No valid principal gets the same 403 the servlet chain answers
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "journal.reactive.enabled", havingValue = "true")
+public class ReactiveJwtAuthentication implements HandlerFilterFunction<ServerResponse, ServerResponse> {
+
+    //The AuthenticatedUser of the request, read it with principal()
+    private static final String PRINCIPAL_ATTRIBUTE = ReactiveJwtAuthentication.class.getName() + ".principal";
+
+    @Autowired
+    private JwtUtil jwtUtil;
+
+    @Autowired
+    private UserDetailsCache userDetailsCache;
+
+    @Value("${jwt.stateless:true}")
+    private boolean stateless;
+
+    public static AuthenticatedUser principal(ServerRequest request) {
+        return (AuthenticatedUser) request.attribute(PRINCIPAL_ATTRIBUTE)
+                .orElseThrow(() -> new IllegalStateException("Request was not authenticated"));
+    }
+
+    @Override
+    public Mono<ServerResponse> filter(ServerRequest request, HandlerFunction<ServerResponse> next) {
+        Claims claims = verifiedClaims(request.headers().firstHeader(HttpHeaders.AUTHORIZATION));
+        if (claims == null) {
+            return ServerResponse.status(HttpStatus.FORBIDDEN).build();
+        }
+        AuthenticatedUser fromToken = stateless ? jwtUtil.toPrincipal(claims) : null;
+        Mono<UserDetails> user = fromToken != null
+                ? Mono.just(fromToken)
+                : Mono.fromCallable(() -> userDetailsCache.get(claims.getSubject()))
+                        .subscribeOn(Schedulers.boundedElastic())
+                        .onErrorResume(UsernameNotFoundException.class, e -> {
+                            log.debug("Token of a user that no longer exists: {}", e.getMessage());
+                            return Mono.empty();
+                        });
+        return user
+                .flatMap(userDetails -> {
+                    request.attributes().put(PRINCIPAL_ATTRIBUTE, userDetails);
+                    return next.handle(request);
+                })
+                .switchIfEmpty(Mono.defer(() -> ServerResponse.status(HttpStatus.FORBIDDEN).build()));
+    }
+
+    //Signature and expiry check, a cached token costs a lookup, a new one an HMAC, both fine on the event loop
+    private Claims verifiedClaims(String authorizationHeader) {
+        if (authorizationHeader == null || !authorizationHeader.startsWith("Bearer ")) {
+            return null;
+        }
+        try {
+            // refresh tokens, also the old ones that only have the typ header, are refused by parseVerified
+            return jwtUtil.parseVerified(authorizationHeader.substring(7));
+        } catch (JwtException | IllegalArgumentException e) {
+            log.debug("Rejected JWT: {}", e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.learnpr1.journalApp.reactive;
+
+
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.data.mongo.MongoReactiveDataAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.mongo.MongoReactiveRepositoriesAutoConfiguration;
+import org.springframework.boot.autoconfigure.mongo.MongoReactiveAutoConfiguration;
+import org.springframework.context.annotation.Configuration;
+
+// The reactive mongo client (its own connection pool), ReactiveMongoTemplate and ReactiveJournalEntryRepo
+// JournalApplication excludes their auto configuration, they are brought back here only when the reactive tier is on,
+// so an app serving tomcat alone opens no second pool to mongo
+@Configuration
+@ConditionalOnProperty(name = "journal.reactive.enabled", havingValue = "true")
+@ImportAutoConfiguration({
+        MongoReactiveAutoConfiguration.class,
+        MongoReactiveDataAutoConfiguration.class,
+        MongoReactiveRepositoriesAutoConfiguration.class})
+public class ReactiveMongoConfig {
+}
@@ -1,12 +1,34 @@
 package com.learnpr1.journalApp.repositary;
 
 import com.learnpr1.journalApp.entity.JournalEntry;
+import com.learnpr1.journalApp.entity.JournalEntrySummary;
 import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.repository.Aggregation;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
+import java.util.Optional;
+
 @Repository
 //mongorepo does normal CRUD operations -Create Read update Delete
 public interface JournalEntryRepo extends MongoRepository<JournalEntry, ObjectId>    {
 
+    //One page of entries newest first, reading only id/title/date and the first snippetLength characters of content
+    //Paging is done on _id (keyset) so a page is stable even when new entries are added in between
+    //Served by the owner_id index, so a page reads only its own rows
+    @Aggregation(pipeline = {
+            "{ '$match': { 'ownerId': ?0, '_id': { '$lt': ?1 } } }",
+            "{ '$sort': { '_id': -1 } }",
+            "{ '$limit': ?2 }",
+            "{ '$project': { 'title': 1, 'date': 1, 'snippet': { '$substrCP': [ { '$ifNull': [ '$content', '' ] }, 0, ?3 ] } } }"
+    })
+    List<JournalEntrySummary> findSummariesBefore(ObjectId ownerId, ObjectId before, int limit, int snippetLength);
+
+    //One entry, only if it belongs to the owner, a single lookup on the owner_id index
+    Optional<JournalEntry> findByIdAndOwnerId(ObjectId id, ObjectId ownerId);
+
+    //All entries of a user, oldest first like the old journalEntryList
+    List<JournalEntry> findByOwnerIdOrderByIdAsc(ObjectId ownerId);
+
 }
@@ -0,0 +1,29 @@
+package com.learnpr1.journalApp.repositary;
+
+import com.learnpr1.journalApp.entity.JournalEntry;
+import com.learnpr1.journalApp.entity.JournalEntrySummary;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.repository.Aggregation;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+@Repository
+//Non blocking twin of JournalEntryRepo for the reactive tier, same collection, same queries, same indexes
+public interface ReactiveJournalEntryRepo extends ReactiveMongoRepository<JournalEntry, ObjectId> {
+
+    //See JournalEntryRepo.findSummariesBefore
+    @Aggregation(pipeline = {
+            "{ '$match': { 'ownerId': ?0, '_id': { '$lt': ?1 } } }",
+            "{ '$sort': { '_id': -1 } }",
+            "{ '$limit': ?2 }",
+            "{ '$project': { 'title': 1, 'date': 1, 'snippet': { '$substrCP': [ { '$ifNull': [ '$content', '' ] }, 0, ?3 ] } } }"
+    })
+    Flux<JournalEntrySummary> findSummariesBefore(ObjectId ownerId, ObjectId before, int limit, int snippetLength);
+
+    Mono<JournalEntry> findByIdAndOwnerId(ObjectId id, ObjectId ownerId);
+
+    //Emits the entries as the cursor reads them, nothing is collected in memory
+    Flux<JournalEntry> findByOwnerIdOrderByIdAsc(ObjectId ownerId);
+}
@@ -0,0 +1,11 @@
+package com.learnpr1.journalApp.repositary;
+
+import com.learnpr1.journalApp.entity.TtsJob;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface TtsJobRepo extends MongoRepository<TtsJob, ObjectId> {
+
+}
@@ -4,11 +4,16 @@ import com.learnpr1.journalApp.entity.JournalEntry;
 import com.learnpr1.journalApp.entity.User;
 import org.bson.types.ObjectId;
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
 
 @Repository
 public interface UserRepo extends MongoRepository<User, ObjectId>{
     User findByUsername(String username);
 
+    //Same user without the journalEntryList old documents may still carry, enough for login and security checks
+    @Query(value = "{ 'username': ?0 }", fields = "{ 'journalEntryList': 0 }")
+    User findCredentialsByUsername(String username);
+
     void delete(User user);
 }
@@ -0,0 +1,271 @@
+package com.learnpr1.journalApp.search;
+
+
+import com.learnpr1.journalApp.entity.JournalEntry;
+import com.learnpr1.journalApp.entity.JournalSearchHit;
+import com.learnpr1.journalApp.service.JournalEntriesChangedEvent;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+// In memory inverted index of a user's entries, the "local" engine of /journal/search
+// Unlike the mongo text index it matches prefixes ("jour*" finds journal, journey...) but does no stemming
+// An index is built from mongo on the first search of a user and dropped when that user's entries change
+// Changes made through another instance send no event here, so an index is also rebuilt once it is older than
+// journal.search.local.ttl-ms, that is how stale the local engine can be when several instances share the database
+// All kept indexes together hold at most journal.search.local.max-postings postings (one per distinct term of an entry,
+// about 100 bytes of heap each), the least recently searched index goes first to make room
+// A user whose entries alone need more than that is not indexed here, search returns null and mongo answers instead
+@Component
+public class LocalSearchIndex {
+
+    private static final int TITLE_WEIGHT = 2;
+
+    private record Doc(String id, String title, LocalDateTime date, String snippet) {
+    }
+
+    // postings: term -> (doc index -> weighted term frequency), sorted so a prefix is a sub map
+    // size: number of (term, doc) postings, what the budget is counted in
+    // builtAt: System.nanoTime() when the build started
+    private record UserIndex(List<Doc> docs, NavigableMap<String, Map<Integer, Integer>> postings, long size, long builtAt) {
+    }
+
+    private record TooLarge(long generation, long foundAt) {
+    }
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    private final long maxPostings;
+    private final long ttlNanos;
+    private final int snippetLength;
+
+    // guarded by indexesLock (a ReentrantLock so waiting virtual threads don't pin their carrier), never held while building
+    // access ordered, so the first one is the least recently searched
+    private final Map<ObjectId, UserIndex> indexes = new LinkedHashMap<>(16, 0.75f, true);
+    private final ReentrantLock indexesLock = new ReentrantLock();
+    private long postings;
+    // bumped on every change, an index built while its user changed is not kept
+    private final Map<ObjectId, Long> generations = new ConcurrentHashMap<>();
+    // users found too large, not tried again till their entries change or the ttl is over
+    private final Map<ObjectId, TooLarge> tooLargeAt = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong builds = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong tooLarge = new AtomicLong();
+
+    public LocalSearchIndex(@Value("${journal.search.local.max-postings:2000000}") long maxPostings,
+                            @Value("${journal.search.local.ttl-ms:60000}") long ttlMs,
+                            @Value("${journal.search.snippet-length:140}") int snippetLength) {
+        this.maxPostings = maxPostings;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+        this.snippetLength = snippetLength;
+    }
+
+    //Ranked hits of the owner's entries, terms are OR'ed like mongo's $text, a term ending in * matches as a prefix
+    //null when the owner's entries are too large for the local index
+    public List<JournalSearchHit> search(ObjectId ownerId, String queryText, int skip, int limit) {
+        UserIndex index = indexFor(ownerId);
+        if (index == null) {
+            return null;
+        }
+        Map<Integer, Double> scores = new HashMap<>();
+        int docCount = index.docs().size();
+        for (String word : queryText.split("\\s+")) {
+            boolean prefix = word.endsWith("*");
+            for (String term : tokenize(word)) {
+                Map<String, Map<Integer, Integer>> matches = prefix
+                        ? index.postings().subMap(term, true, term + Character.MAX_VALUE, false)
+                        : index.postings().containsKey(term) ? Map.of(term, index.postings().get(term)) : Map.of();
+                for (Map<Integer, Integer> posting : matches.values()) {
+                    double idf = Math.log(1.0 + (double) docCount / posting.size());
+                    posting.forEach((doc, tf) -> scores.merge(doc, tf * idf, Double::sum));
+                }
+            }
+        }
+        return scores.entrySet().stream()
+                .sorted(Map.Entry.<Integer, Double>comparingByValue(Comparator.reverseOrder())
+                        .thenComparing(Map.Entry.comparingByKey(Comparator.reverseOrder())))
+                .skip(skip)
+                .limit(limit)
+                .map(entry -> {
+                    Doc doc = index.docs().get(entry.getKey());
+                    return new JournalSearchHit(doc.id(), doc.title(), doc.date(), doc.snippet(), entry.getValue());
+                })
+                .toList();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onEntriesChanged(JournalEntriesChangedEvent event) {
+        indexesLock.lock();
+        try {
+            generations.merge(event.ownerId(), 1L, Long::sum);
+            tooLargeAt.remove(event.ownerId());
+            remove(event.ownerId());
+        } finally {
+            indexesLock.unlock();
+        }
+    }
+
+    public Map<String, Object> stats() {
+        indexesLock.lock();
+        try {
+            return Map.of(
+                    "users", indexes.size(),
+                    "postings", postings,
+                    "maxPostings", maxPostings,
+                    "hits", hits.get(),
+                    "builds", builds.get(),
+                    "evictions", evictions.get(),
+                    "expired", expired.get(),
+                    "tooLarge", tooLarge.get());
+        } finally {
+            indexesLock.unlock();
+        }
+    }
+
+    private UserIndex indexFor(ObjectId ownerId) {
+        long generation;
+        indexesLock.lock();
+        try {
+            UserIndex index = indexes.get(ownerId);
+            if (index != null && !isExpired(index.builtAt())) {
+                hits.incrementAndGet();
+                return index;
+            }
+            if (index != null) {
+                // may miss changes made through another instance, built again below
+                remove(ownerId);
+                expired.incrementAndGet();
+            }
+            generation = generations.getOrDefault(ownerId, 0L);
+        } finally {
+            indexesLock.unlock();
+        }
+        TooLarge known = tooLargeAt.get(ownerId);
+        if (known != null && known.generation() == generation && !isExpired(known.foundAt())) {
+            return null;
+        }
+        long buildStarted = System.nanoTime();
+        UserIndex index = build(ownerId, buildStarted);
+        builds.incrementAndGet();
+        if (index == null) {
+            tooLarge.incrementAndGet();
+            tooLargeAt.put(ownerId, new TooLarge(generation, buildStarted));
+            return null;
+        }
+        indexesLock.lock();
+        try {
+            if (generations.getOrDefault(ownerId, 0L) == generation) {
+                remove(ownerId);
+                // make room, least recently searched first
+                Iterator<Map.Entry<ObjectId, UserIndex>> eldest = indexes.entrySet().iterator();
+                while (postings + index.size() > maxPostings && eldest.hasNext()) {
+                    postings -= eldest.next().getValue().size();
+                    eldest.remove();
+                    evictions.incrementAndGet();
+                }
+                indexes.put(ownerId, index);
+                postings += index.size();
+            }
+        } finally {
+            indexesLock.unlock();
+        }
+        return index;
+    }
+
+    private boolean isExpired(long startedAt) {
+        return System.nanoTime() - startedAt >= ttlNanos;
+    }
+
+    //caller holds indexesLock
+    private void remove(ObjectId ownerId) {
+        UserIndex removed = indexes.remove(ownerId);
+        if (removed != null) {
+            postings -= removed.size();
+        }
+    }
+
+    //null as soon as the entries need more than the whole budget, the rest is not read
+    private UserIndex build(ObjectId ownerId, long builtAt) {
+        Query query = new Query(Criteria.where("ownerId").is(ownerId));
+        query.fields().include("title", "content", "date");
+        List<Doc> docs = new ArrayList<>();
+        NavigableMap<String, Map<Integer, Integer>> postings = new TreeMap<>();
+        long size = 0;
+        try (Stream<JournalEntry> entries = mongoTemplate.stream(query, JournalEntry.class)) {
+            Iterator<JournalEntry> iterator = entries.iterator();
+            while (iterator.hasNext()) {
+                JournalEntry entry = iterator.next();
+                int doc = docs.size();
+                String content = entry.getContent() != null ? entry.getContent() : "";
+                docs.add(new Doc(entry.getId().toHexString(), entry.getTitle(), entry.getDate(), snippet(content)));
+                Map<String, Integer> terms = new HashMap<>();
+                for (String term : tokenize(entry.getTitle())) {
+                    terms.merge(term, TITLE_WEIGHT, Integer::sum);
+                }
+                for (String term : tokenize(content)) {
+                    terms.merge(term, 1, Integer::sum);
+                }
+                size += terms.size();
+                if (size > maxPostings) {
+                    return null;
+                }
+                terms.forEach((term, tf) -> postings.computeIfAbsent(term, t -> new HashMap<>()).put(doc, tf));
+            }
+        }
+        return new UserIndex(List.copyOf(docs), postings, size, builtAt);
+    }
+
+    private String snippet(String content) {
+        if (content.codePointCount(0, content.length()) <= snippetLength) {
+            return content;
+        }
+        return content.substring(0, content.offsetByCodePoints(0, snippetLength));
+    }
+
+    //Lower case runs of letters and digits
+    static List<String> tokenize(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null) {
+            return terms;
+        }
+        StringBuilder term = new StringBuilder();
+        text.toLowerCase(Locale.ROOT).codePoints().forEach(c -> {
+            if (Character.isLetterOrDigit(c)) {
+                term.appendCodePoint(c);
+            } else if (!term.isEmpty()) {
+                terms.add(term.toString());
+                term.setLength(0);
+            }
+        });
+        if (!term.isEmpty()) {
+            terms.add(term.toString());
+        }
+        return terms;
+    }
+}
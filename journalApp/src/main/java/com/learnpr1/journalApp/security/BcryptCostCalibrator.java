@@ -0,0 +1,49 @@
+package com.learnpr1.journalApp.security;
+
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.crypto.bcrypt.BCrypt;
+
+import java.util.Arrays;
+
+// Picks the bcrypt cost for this machine at startup
+// Every +1 of cost doubles the time of a hash, so the cost is raised from minStrength while the median
+// of a few hashes stays within targetMs. It never goes below minStrength, even on a slow machine
+@Slf4j
+final class BcryptCostCalibrator {
+
+    private static final int SAMPLES = 3;
+    private static final String SAMPLE_PASSWORD = "calibration-password";
+
+    private BcryptCostCalibrator() {
+    }
+
+    static int calibrate(long targetMs, int minStrength, int maxStrength) {
+        int chosen = minStrength;
+        for (int strength = minStrength; strength <= maxStrength; strength++) {
+            long medianMs = medianHashMs(strength);
+            log.info("bcrypt cost {} takes {} ms here", strength, medianMs);
+            if (medianMs > targetMs) {
+                break;
+            }
+            chosen = strength;
+            // the next cost takes about twice as long, don't spend that time when it can't fit anyway
+            if (medianMs * 2 > targetMs) {
+                break;
+            }
+        }
+        log.info("Using bcrypt cost {} for a target of {} ms per check", chosen, targetMs);
+        return chosen;
+    }
+
+    private static long medianHashMs(int strength) {
+        long[] samples = new long[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            long start = System.nanoTime();
+            BCrypt.hashpw(SAMPLE_PASSWORD, BCrypt.gensalt(strength));
+            samples[i] = (System.nanoTime() - start) / 1_000_000;
+        }
+        Arrays.sort(samples);
+        return samples[SAMPLES / 2];
+    }
+}
@@ -0,0 +1,60 @@
+package com.learnpr1.journalApp.security;
+
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Set of strings that can answer "surely not in it" without any false negatives, in a fixed number of bits
+// Sized for expectedItems at the given false positive rate, items can only be added, never removed
+// Safe to use from many threads
+final class BloomFilter {
+
+    private final AtomicLongArray bits;
+    private final int bitCount;
+    private final int hashCount;
+
+    BloomFilter(int expectedItems, double falsePositiveRate) {
+        int items = Math.max(1, expectedItems);
+        long size = (long) Math.ceil(-items * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.bitCount = (int) Math.min(Integer.MAX_VALUE - 64, Math.max(64, size));
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / items * Math.log(2)));
+        this.bits = new AtomicLongArray((bitCount + 63) / 64);
+    }
+
+    void add(String item) {
+        long h1 = hash(item, 0x9E3779B97F4A7C15L);
+        long h2 = hash(item, 0xC2B2AE3D27D4EB4FL);
+        for (int i = 0; i < hashCount; i++) {
+            int bit = (int) Math.floorMod(h1 + i * h2, (long) bitCount);
+            long mask = 1L << (bit & 63);
+            bits.getAndAccumulate(bit >>> 6, mask, (current, m) -> current | m);
+        }
+    }
+
+    boolean mightContain(String item) {
+        long h1 = hash(item, 0x9E3779B97F4A7C15L);
+        long h2 = hash(item, 0xC2B2AE3D27D4EB4FL);
+        for (int i = 0; i < hashCount; i++) {
+            int bit = (int) Math.floorMod(h1 + i * h2, (long) bitCount);
+            if ((bits.get(bit >>> 6) & (1L << (bit & 63))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // FNV-1a over the bytes with a seed, finished with the murmur3 mix so nearby inputs spread over all bits
+    private static long hash(String item, long seed) {
+        long hash = 0xCBF29CE484222325L ^ seed;
+        for (byte b : item.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b;
+            hash *= 0x100000001B3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB93FE1A85EC3L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
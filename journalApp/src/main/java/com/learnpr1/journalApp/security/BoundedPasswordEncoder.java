@@ -0,0 +1,183 @@
+package com.learnpr1.journalApp.security;
+
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// The only PasswordEncoder of the app, used by signup, user updates and the login check
+// Hashes are written as {bcrypt}$2a$<cost>$..., hashes from before (no {id}) are still read as bcrypt
+// upgradeEncoding is true for a hash in an old format or with another cost than the current one,
+// UpgradingAuthenticationProvider then rewrites it in the background after a successful login
+// The cost is security.bcrypt.strength, or when that is not set the one BcryptCostCalibrator measures
+// for security.bcrypt.target-verify-ms on this machine
+// bcrypt is slow on purpose, so it runs on its own small pool (security.bcrypt.threads) instead of the request threads:
+// a burst of logins can keep at most that many cores busy and the journal requests keep theirs
+// At most security.bcrypt.queue hashes wait for the pool, past that (or after security.bcrypt.timeout-ms of waiting)
+// PasswordHashingBusyException is thrown and the caller answers 503
+// Metrics: security.bcrypt timer (tag operation=encode|matches, only the hashing itself, not the wait for the pool),
+// security.bcrypt.queued and .active gauges, security.bcrypt.rejected counter (tag reason=queue_full|timeout)
+@Component
+public class BoundedPasswordEncoder implements PasswordEncoder {
+
+    private static final String BCRYPT_ID = "bcrypt";
+
+    private final DelegatingPasswordEncoder delegate;
+    private final int strength;
+    private final long timeoutMs;
+    private final ThreadPoolExecutor executor;
+    private final Timer encodeTimer;
+    private final Timer matchesTimer;
+
+    private final AtomicLong encodes = new AtomicLong();
+    private final AtomicLong verifies = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+    private final AtomicLong totalHashNanos = new AtomicLong();
+    private final AtomicLong maxHashNanos = new AtomicLong();
+
+    public BoundedPasswordEncoder(@Value("${security.bcrypt.strength:0}") int strength,
+                                  @Value("${security.bcrypt.target-verify-ms:250}") long targetVerifyMs,
+                                  @Value("${security.bcrypt.min-strength:10}") int minStrength,
+                                  @Value("${security.bcrypt.max-strength:14}") int maxStrength,
+                                  @Value("${security.bcrypt.threads:0}") int threads,
+                                  @Value("${security.bcrypt.queue:64}") int queue,
+                                  @Value("${security.bcrypt.timeout-ms:5000}") long timeoutMs,
+                                  MeterRegistry meterRegistry) {
+        this.strength = strength > 0 ? strength : BcryptCostCalibrator.calibrate(targetVerifyMs, minStrength, maxStrength);
+        BCryptPasswordEncoder bcrypt = new BCryptPasswordEncoder(this.strength);
+        this.delegate = new DelegatingPasswordEncoder(BCRYPT_ID, Map.of(BCRYPT_ID, bcrypt));
+        this.delegate.setDefaultPasswordEncoderForMatches(bcrypt);
+        this.timeoutMs = timeoutMs;
+        // by default half of the cores, always at least one
+        int poolSize = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queue),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "bcrypt-" + counter.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+
+        this.encodeTimer = hashTimer(meterRegistry, "encode");
+        this.matchesTimer = hashTimer(meterRegistry, "matches");
+        Gauge.builder("security.bcrypt.queued", executor, pool -> pool.getQueue().size()).register(meterRegistry);
+        Gauge.builder("security.bcrypt.active", executor, ThreadPoolExecutor::getActiveCount).register(meterRegistry);
+        FunctionCounter.builder("security.bcrypt.rejected", rejected, AtomicLong::get).tag("reason", "queue_full").register(meterRegistry);
+        FunctionCounter.builder("security.bcrypt.rejected", timedOut, AtomicLong::get).tag("reason", "timeout").register(meterRegistry);
+    }
+
+    private static Timer hashTimer(MeterRegistry meterRegistry, String operation) {
+        return Timer.builder("security.bcrypt")
+                .tag("operation", operation)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        encodes.incrementAndGet();
+        return run(encodeTimer, () -> delegate.encode(rawPassword));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        verifies.incrementAndGet();
+        return run(matchesTimer, () -> delegate.matches(rawPassword, encodedPassword));
+    }
+
+    //Also true when the cost is higher than the current one, so a lower target makes logins cheaper again
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        if (encodedPassword == null || !encodedPassword.startsWith("{" + BCRYPT_ID + "}")) {
+            return true;
+        }
+        // {bcrypt}$2a$10$...
+        String hash = encodedPassword.substring(BCRYPT_ID.length() + 2);
+        String[] parts = hash.split("\\$");
+        try {
+            return parts.length < 3 || Integer.parseInt(parts[2]) != strength;
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    public Map<String, Object> stats() {
+        long count = encodes.get() + verifies.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("strength", strength);
+        stats.put("threads", executor.getMaximumPoolSize());
+        stats.put("encodes", encodes.get());
+        stats.put("verifies", verifies.get());
+        stats.put("rejected", rejected.get());
+        stats.put("timedOut", timedOut.get());
+        stats.put("queued", executor.getQueue().size());
+        stats.put("active", executor.getActiveCount());
+        stats.put("avgHashMs", count == 0 ? 0.0 : totalHashNanos.get() / 1_000_000.0 / count);
+        stats.put("maxHashMs", maxHashNanos.get() / 1_000_000.0);
+        return stats;
+    }
+
+    private <T> T run(Timer timer, Callable<T> hashing) {
+        Future<T> future;
+        try {
+            future = executor.submit(() -> {
+                long start = System.nanoTime();
+                try {
+                    return hashing.call();
+                } finally {
+                    long nanos = System.nanoTime() - start;
+                    totalHashNanos.addAndGet(nanos);
+                    maxHashNanos.accumulateAndGet(nanos, Math::max);
+                    timer.record(nanos, TimeUnit.NANOSECONDS);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            throw new PasswordHashingBusyException("Too many password checks in progress");
+        }
+        try {
+            return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            timedOut.incrementAndGet();
+            throw new PasswordHashingBusyException("Password check took too long");
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new PasswordHashingBusyException("Interrupted while waiting for the password check");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,10 @@
+package com.learnpr1.journalApp.security;
+
+
+//The refresh token is malformed, expired, revoked or was already used, the client has to log in again
+public class InvalidRefreshTokenException extends RuntimeException {
+
+    public InvalidRefreshTokenException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,168 @@
+package com.learnpr1.journalApp.security;
+
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Token buckets for /public/login and /public/signup, one per username and one per client ip
+// A username gets security.login.per-user-per-minute attempts and an ip security.login.per-ip-per-minute,
+// both refill continuously and allow a burst of the same size
+// The ip is request.getRemoteAddr(), behind a proxy set server.forward-headers-strategy so it is the client's
+@Component
+public class LoginRateLimiter {
+
+    // tokens and updatedAt change together under lock, a ReentrantLock so a waiting virtual thread doesn't pin its carrier
+    private static final class Bucket {
+        private final ReentrantLock lock = new ReentrantLock();
+        private double tokens;
+        private long updatedAt;
+
+        private Bucket(double tokens, long updatedAt) {
+            this.tokens = tokens;
+            this.updatedAt = updatedAt;
+        }
+    }
+
+    private final int perUser;
+    private final int perIp;
+    private final int maxKeys;
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+    private final AtomicLong allowed = new AtomicLong();
+    private final AtomicLong rejectedUser = new AtomicLong();
+    private final AtomicLong rejectedIp = new AtomicLong();
+
+    public LoginRateLimiter(@Value("${security.login.per-user-per-minute:10}") int perUser,
+                            @Value("${security.login.per-ip-per-minute:30}") int perIp,
+                            @Value("${security.login.max-tracked-keys:100000}") int maxKeys) {
+        this.perUser = perUser;
+        this.perIp = perIp;
+        this.maxKeys = maxKeys;
+    }
+
+    //Takes one attempt from both buckets, false when either is empty (the other one is not charged then)
+    //Both buckets are checked and charged under their locks, so parallel attempts can't all pass on the same last token
+    public boolean tryAcquire(String username, String ip) {
+        String userKey = "user:" + (username != null ? username : "");
+        String ipKey = "ip:" + ip;
+        while (true) {
+            long now = System.currentTimeMillis();
+            Bucket ipBucket = bucket(ipKey, perIp, now);
+            Bucket userBucket = bucket(userKey, perUser, now);
+            // always the ip bucket first, so two attempts never hold one lock each and wait for the other
+            lock(ipBucket);
+            lock(userBucket);
+            try {
+                if (isDropped(ipKey, ipBucket) || isDropped(userKey, userBucket)) {
+                    // cleanup took it out of the map meanwhile, a charge on it would be lost
+                    continue;
+                }
+                if (!hasToken(ipBucket, perIp, now)) {
+                    rejectedIp.incrementAndGet();
+                    return false;
+                }
+                if (!hasToken(userBucket, perUser, now)) {
+                    rejectedUser.incrementAndGet();
+                    return false;
+                }
+                take(ipBucket);
+                take(userBucket);
+                allowed.incrementAndGet();
+                return true;
+            } finally {
+                unlock(userBucket);
+                unlock(ipBucket);
+            }
+        }
+    }
+
+    //Seconds until one attempt is available again, for the Retry-After header
+    public long retryAfterSeconds() {
+        return Math.max(1, 60 / Math.max(1, Math.min(perUser, perIp)));
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("allowed", allowed.get());
+        stats.put("rejectedByUsername", rejectedUser.get());
+        stats.put("rejectedByIp", rejectedIp.get());
+        stats.put("trackedKeys", buckets.size());
+        return stats;
+    }
+
+    //Full buckets hold no information, dropping them keeps the map small
+    //A bucket leaves the map under its lock, so tryAcquire sees it is gone before charging it
+    @Scheduled(fixedDelayString = "${security.login.cleanup-interval-ms:60000}")
+    public void cleanup() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, Bucket> entry : buckets.entrySet()) {
+            int capacity = entry.getKey().startsWith("ip:") ? perIp : perUser;
+            Bucket bucket = entry.getValue();
+            bucket.lock.lock();
+            try {
+                if (refill(bucket, capacity, now) >= capacity) {
+                    buckets.remove(entry.getKey(), bucket);
+                }
+            } finally {
+                bucket.lock.unlock();
+            }
+        }
+    }
+
+    //null when the key is not tracked
+    private Bucket bucket(String key, int capacity, long now) {
+        if (buckets.size() >= maxKeys && !buckets.containsKey(key)) {
+            // too many clients at once to track, they get the benefit of the doubt till cleanup runs
+            return null;
+        }
+        return buckets.computeIfAbsent(key, k -> new Bucket(capacity, now));
+    }
+
+    //caller holds the bucket's lock
+    private boolean isDropped(String key, Bucket bucket) {
+        return bucket != null && buckets.get(key) != bucket;
+    }
+
+    private boolean hasToken(Bucket bucket, int capacity, long now) {
+        if (bucket == null) {
+            return capacity > 0;
+        }
+        return refill(bucket, capacity, now) >= 1;
+    }
+
+    private void take(Bucket bucket) {
+        if (bucket != null) {
+            bucket.tokens -= 1;
+        }
+    }
+
+    private static void lock(Bucket bucket) {
+        if (bucket != null) {
+            bucket.lock.lock();
+        }
+    }
+
+    private static void unlock(Bucket bucket) {
+        if (bucket != null) {
+            bucket.lock.unlock();
+        }
+    }
+
+    private double refill(Bucket bucket, int capacity, long now) {
+        if (now <= bucket.updatedAt) {
+            // an attempt that read the clock later got the lock first
+            return bucket.tokens;
+        }
+        double perMs = capacity / 60_000.0;
+        bucket.tokens = Math.min(capacity, bucket.tokens + (now - bucket.updatedAt) * perMs);
+        bucket.updatedAt = now;
+        return bucket.tokens;
+    }
+}
@@ -0,0 +1,10 @@
+package com.learnpr1.journalApp.security;
+
+
+//Thrown without hashing when the bcrypt pool and its queue are full or the wait for it ran out
+public class PasswordHashingBusyException extends RuntimeException {
+
+    public PasswordHashingBusyException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,80 @@
+package com.learnpr1.journalApp.security;
+
+
+import com.learnpr1.journalApp.entity.User;
+import com.mongodb.client.result.UpdateResult;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Rewrites an outdated password hash after a successful login, without making that login wait
+// The new hash only replaces the exact hash the login was checked against,
+// so a password changed in the meantime is never overwritten
+// When the bcrypt pool is busy the upgrade is skipped, the next login tries again
+@Slf4j
+@Service
+public class PasswordUpgradeService {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("password-upgrade-", 0).factory());
+    private final Set<ObjectId> inProgress = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong upgraded = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+
+    public void upgradeLater(ObjectId userId, String currentHash, String rawPassword) {
+        if (userId == null || !inProgress.add(userId)) {
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                String newHash = passwordEncoder.encode(rawPassword);
+                Query query = new Query(Criteria.where("_id").is(userId).and("password").is(currentHash));
+                UpdateResult result = mongoTemplate.updateFirst(query, new Update().set("password", newHash), User.class);
+                if (result.getModifiedCount() > 0) {
+                    upgraded.incrementAndGet();
+                } else {
+                    skipped.incrementAndGet();
+                }
+            } catch (Exception e) {
+                skipped.incrementAndGet();
+                log.warn("Could not upgrade the password hash of user {}: {}", userId, e.getMessage());
+            } finally {
+                inProgress.remove(userId);
+            }
+        });
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("upgraded", upgraded.get());
+        stats.put("skipped", skipped.get());
+        stats.put("inProgress", inProgress.size());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
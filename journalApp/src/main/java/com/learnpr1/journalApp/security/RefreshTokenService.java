@@ -0,0 +1,226 @@
+package com.learnpr1.journalApp.security;
+
+
+import com.learnpr1.journalApp.Cache.UserDetailsCache;
+import com.learnpr1.journalApp.entity.AuthResponseDTO;
+import com.learnpr1.journalApp.entity.AuthenticatedUser;
+import com.learnpr1.journalApp.entity.RefreshToken;
+import com.learnpr1.journalApp.utils.JwtUtil;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+// Refresh tokens with rotation and reuse detection
+// - every token is stored in refresh_tokens (TTL index on expiresAt) and can be exchanged exactly once,
+//   the exchange hands out a new token of the same family
+// - presenting a token that was already exchanged means it leaked: the whole family is revoked
+// - revoked families (logout or reuse) are also kept in memory (bloom filter in front of an exact map) till their
+//   last token expires, at most jwt.refresh.max-revoked-families of them, so the tokens of a revoked family are refused
+//   without going to mongo and most refreshes are answered "not revoked" by the bloom filter without touching the map
+// Tokens that were only exchanged are not kept, the findAndModify that consumes a token tells a reuse apart
+// The in memory set only speeds things up, that single findAndModify decides,
+// so revocations done by another instance or past the limit are still enforced
+@Slf4j
+@Service
+public class RefreshTokenService {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private JwtUtil jwtUtil;
+
+    @Autowired
+    private UserDetailsCache userDetailsCache;
+
+    private final Duration ttl;
+    private final int maxRevokedFamilies;
+    private final int bloomExpected;
+    private final double bloomFalsePositiveRate;
+
+    // familyId -> when the last token of the family expires
+    private final Map<String, Instant> revokedFamilies = new ConcurrentHashMap<>();
+    private volatile BloomFilter bloom;
+
+    private final AtomicLong rotations = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong reuseDetected = new AtomicLong();
+    private final AtomicLong bloomNegatives = new AtomicLong();
+
+    public RefreshTokenService(@Value("${jwt.refresh.ttl-ms:86400000}") long ttlMs,
+                               @Value("${jwt.refresh.max-revoked-families:100000}") int maxRevokedFamilies,
+                               @Value("${jwt.refresh.bloom.expected-items:100000}") int bloomExpected,
+                               @Value("${jwt.refresh.bloom.false-positive-rate:0.01}") double bloomFalsePositiveRate) {
+        this.ttl = Duration.ofMillis(ttlMs);
+        this.maxRevokedFamilies = maxRevokedFamilies;
+        this.bloomExpected = bloomExpected;
+        this.bloomFalsePositiveRate = bloomFalsePositiveRate;
+        this.bloom = new BloomFilter(bloomExpected, bloomFalsePositiveRate);
+    }
+
+    //First refresh token of a login, it starts a new family
+    public String issue(AuthenticatedUser user) {
+        return issue(user, UUID.randomUUID().toString());
+    }
+
+    //Exchanges a refresh token for a new access token and a new refresh token
+    public AuthResponseDTO rotate(String token) {
+        Claims claims;
+        try {
+            claims = jwtUtil.parseRefreshToken(token);
+        } catch (JwtException | IllegalArgumentException e) {
+            throw reject("Invalid refresh token");
+        }
+        String tokenId = claims.getId();
+        if (tokenId == null) {
+            // stateless refresh tokens from before this store existed can't be tracked, their users log in again
+            throw reject("Refresh token is no longer supported");
+        }
+
+        String familyId = claims.get(JwtUtil.FAMILY_ID_CLAIM, String.class);
+        if (familyId != null) {
+            if (!bloom.mightContain(familyId)) {
+                bloomNegatives.incrementAndGet();
+            } else if (revokedFamilies.containsKey(familyId)) {
+                throw reject("Refresh token was revoked");
+            }
+        }
+
+        Instant now = Instant.now();
+        Query unused = new Query(Criteria.where("_id").is(tokenId).and("usedAt").is(null).and("revokedAt").is(null).and("expiresAt").gt(now));
+        RefreshToken consumed = mongoTemplate.findAndModify(unused, new Update().set("usedAt", now),
+                FindAndModifyOptions.options().returnNew(true), RefreshToken.class);
+        if (consumed == null) {
+            RefreshToken stored = mongoTemplate.findById(tokenId, RefreshToken.class);
+            if (stored != null && stored.getUsedAt() != null && stored.getRevokedAt() == null) {
+                onReuse(stored.getFamilyId(), tokenId);
+            }
+            throw reject("Refresh token was revoked");
+        }
+
+        AuthenticatedUser user;
+        try {
+            user = (AuthenticatedUser) userDetailsCache.get(consumed.getUsername());
+        } catch (UsernameNotFoundException e) {
+            revokeFamily(consumed.getFamilyId());
+            throw reject("User no longer exists");
+        }
+        rotations.incrementAndGet();
+        return new AuthResponseDTO(jwtUtil.generateToken(user), issue(user, consumed.getFamilyId()));
+    }
+
+    //Logout: the token and every token rotated from the same login stop working
+    public void revoke(String token) {
+        try {
+            Claims claims = jwtUtil.parseRefreshToken(token);
+            String familyId = claims.get(JwtUtil.FAMILY_ID_CLAIM, String.class);
+            if (familyId != null) {
+                revokeFamily(familyId);
+            }
+        } catch (JwtException | IllegalArgumentException e) {
+            // nothing to revoke
+        }
+    }
+
+    //Loads the families revoked before this instance started, one row per family (grouped by mongo), newest first
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadRevoked() {
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("revokedAt").ne(null).and("expiresAt").gt(Instant.now())),
+                Aggregation.group("familyId").max("expiresAt").as("expiresAt"),
+                Aggregation.sort(Sort.Direction.DESC, "expiresAt"),
+                Aggregation.limit(maxRevokedFamilies));
+        try (Stream<Document> families = mongoTemplate.aggregateStream(aggregation, RefreshToken.class, Document.class)) {
+            families.forEach(family -> remember(family.getString("_id"), family.getDate("expiresAt").toInstant()));
+        }
+        log.info("Loaded {} revoked refresh token families", revokedFamilies.size());
+    }
+
+    //Families whose tokens all expired fail on exp anyway, they are dropped and the bloom filter is rebuilt without them
+    //A family revoked while the new filter is filled may be missing from it, mongo still refuses its tokens
+    @Scheduled(fixedDelayString = "${jwt.refresh.purge-interval-ms:600000}")
+    public void purgeExpired() {
+        Instant now = Instant.now();
+        revokedFamilies.values().removeIf(expiresAt -> expiresAt.isBefore(now));
+        BloomFilter rebuilt = new BloomFilter(Math.max(bloomExpected, revokedFamilies.size() * 2), bloomFalsePositiveRate);
+        revokedFamilies.keySet().forEach(rebuilt::add);
+        bloom = rebuilt;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("rotations", rotations.get());
+        stats.put("rejected", rejected.get());
+        stats.put("reuseDetected", reuseDetected.get());
+        stats.put("bloomNegatives", bloomNegatives.get());
+        stats.put("revokedFamiliesInMemory", revokedFamilies.size());
+        return stats;
+    }
+
+    private String issue(AuthenticatedUser user, String familyId) {
+        Instant now = Instant.now();
+        RefreshToken refreshToken = new RefreshToken();
+        refreshToken.setId(UUID.randomUUID().toString());
+        refreshToken.setUserId(user.getId());
+        refreshToken.setUsername(user.getUsername());
+        refreshToken.setFamilyId(familyId);
+        refreshToken.setIssuedAt(now);
+        refreshToken.setExpiresAt(now.plus(ttl));
+        mongoTemplate.insert(refreshToken);
+        return jwtUtil.generateRefreshToken(user.getUsername(), refreshToken.getId(), familyId,
+                Date.from(now), Date.from(refreshToken.getExpiresAt()));
+    }
+
+    private void onReuse(String familyId, String tokenId) {
+        reuseDetected.incrementAndGet();
+        log.warn("Refresh token {} was used twice, revoking its family {}", tokenId, familyId);
+        revokeFamily(familyId);
+    }
+
+    private void revokeFamily(String familyId) {
+        Instant now = Instant.now();
+        mongoTemplate.updateMulti(new Query(Criteria.where("familyId").is(familyId).and("revokedAt").is(null)),
+                new Update().set("revokedAt", now), RefreshToken.class);
+        // no token of the family was issued later than now, so none outlives now + ttl
+        remember(familyId, now.plus(ttl));
+    }
+
+    private void remember(String familyId, Instant expiresAt) {
+        if (revokedFamilies.size() >= maxRevokedFamilies && !revokedFamilies.containsKey(familyId)) {
+            // past the limit only mongo refuses the family's tokens
+            return;
+        }
+        revokedFamilies.merge(familyId, expiresAt, (a, b) -> a.isAfter(b) ? a : b);
+        bloom.add(familyId);
+    }
+
+    private InvalidRefreshTokenException reject(String message) {
+        rejected.incrementAndGet();
+        return new InvalidRefreshTokenException(message);
+    }
+}
@@ -0,0 +1,37 @@
+package com.learnpr1.journalApp.security;
+
+
+import com.learnpr1.journalApp.entity.AuthenticatedUser;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+// Username/password check of /public/login
+// Same as the DaoAuthenticationProvider, but an outdated hash is handed to PasswordUpgradeService
+// instead of being re-encoded on the request thread (which DaoAuthenticationProvider would do with a UserDetailsPasswordService)
+// This is the only point where both the stored hash and the raw password are known, the credentials are erased right after
+public class UpgradingAuthenticationProvider extends DaoAuthenticationProvider {
+
+    private final PasswordEncoder passwordEncoder;
+    private final PasswordUpgradeService passwordUpgradeService;
+
+    public UpgradingAuthenticationProvider(UserDetailsService userDetailsService, PasswordEncoder passwordEncoder,
+                                           PasswordUpgradeService passwordUpgradeService) {
+        setUserDetailsService(userDetailsService);
+        setPasswordEncoder(passwordEncoder);
+        this.passwordEncoder = passwordEncoder;
+        this.passwordUpgradeService = passwordUpgradeService;
+    }
+
+    @Override
+    protected Authentication createSuccessAuthentication(Object principal, Authentication authentication, UserDetails user) {
+        if (user instanceof AuthenticatedUser authenticatedUser
+                && authentication.getCredentials() != null
+                && passwordEncoder.upgradeEncoding(user.getPassword())) {
+            passwordUpgradeService.upgradeLater(authenticatedUser.getId(), user.getPassword(), authentication.getCredentials().toString());
+        }
+        return super.createSuccessAuthentication(principal, authentication, user);
+    }
+}
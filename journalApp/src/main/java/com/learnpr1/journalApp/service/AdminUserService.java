@@ -0,0 +1,142 @@
+package com.learnpr1.journalApp.service;
+
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learnpr1.journalApp.entity.AdminUserDTO;
+import com.learnpr1.journalApp.entity.AdminUserPageDTO;
+import com.learnpr1.journalApp.entity.JournalEntry;
+import com.learnpr1.journalApp.entity.User;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+// User listing for admins
+// Users are read as raw documents with only username and roles, so password hashes never leave mongo,
+// and entry counts are added per page (or per chunk when streaming) with one grouped count on the owner_id index
+@Service
+public class AdminUserService {
+
+    private static final int MAX_PAGE_SIZE = 200;
+    private static final int STREAM_CHUNK = 500;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    //sort is "username" or "id", order "asc" or "desc", role keeps only users having it
+    public ResponseEntity<?> listUsers(int page, int size, String sort, String order, String role) {
+        Query query = buildQuery(sort, order, role);
+        if (query == null) {
+            return new ResponseEntity<>("sort must be username or id and order asc or desc", HttpStatus.BAD_REQUEST);
+        }
+        int pageNumber = Math.max(0, page);
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        query.skip((long) pageNumber * pageSize).limit(pageSize + 1);
+
+        List<AdminUserDTO> users = withEntryCounts(mongoTemplate.find(query, Document.class, userCollection()));
+        boolean hasMore = users.size() > pageSize;
+        if (hasMore) {
+            users = users.subList(0, pageSize);
+        }
+        return new ResponseEntity<>(new AdminUserPageDTO(users, pageNumber, pageSize, hasMore), HttpStatus.OK);
+    }
+
+    //Every matching user as NDJSON, written while the cursor is read
+    public ResponseEntity<?> streamUsers(String sort, String order, String role) {
+        Query query = buildQuery(sort, order, role);
+        if (query == null) {
+            return new ResponseEntity<>("sort must be username or id and order asc or desc", HttpStatus.BAD_REQUEST);
+        }
+        query.cursorBatchSize(STREAM_CHUNK);
+        StreamingResponseBody body = outputStream -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+            try (Stream<Document> documents = mongoTemplate.stream(query, Document.class, userCollection())) {
+                Iterator<Document> iterator = documents.iterator();
+                List<Document> chunk = new ArrayList<>(STREAM_CHUNK);
+                while (iterator.hasNext()) {
+                    chunk.add(iterator.next());
+                    if (chunk.size() == STREAM_CHUNK || !iterator.hasNext()) {
+                        write(writer, withEntryCounts(chunk));
+                        chunk.clear();
+                    }
+                }
+            }
+            writer.flush();
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    private Query buildQuery(String sort, String order, String role) {
+        String sortField = switch (sort) {
+            case "username" -> "username";
+            case "id" -> "_id";
+            default -> null;
+        };
+        Sort.Direction direction = Sort.Direction.fromOptionalString(order).orElse(null);
+        if (sortField == null || direction == null) {
+            return null;
+        }
+        Query query = new Query();
+        if (role != null && !role.isEmpty()) {
+            query.addCriteria(Criteria.where("roles").is(role));
+        }
+        query.with(Sort.by(direction, sortField));
+        query.fields().include("username", "roles");
+        return query;
+    }
+
+    private List<AdminUserDTO> withEntryCounts(List<Document> users) {
+        List<ObjectId> ids = users.stream().map(user -> user.getObjectId("_id")).toList();
+        Map<ObjectId, Long> counts = new HashMap<>();
+        if (!ids.isEmpty()) {
+            Aggregation aggregation = Aggregation.newAggregation(
+                    Aggregation.match(Criteria.where("ownerId").in(ids)),
+                    Aggregation.group("ownerId").count().as("count"));
+            for (Document row : mongoTemplate.aggregate(aggregation, JournalEntry.class, Document.class)) {
+                counts.put(row.getObjectId("_id"), ((Number) row.get("count")).longValue());
+            }
+        }
+        return users.stream()
+                .map(user -> new AdminUserDTO(
+                        user.getObjectId("_id").toHexString(),
+                        user.getString("username"),
+                        user.getList("roles", String.class, List.of()),
+                        counts.getOrDefault(user.getObjectId("_id"), 0L)))
+                .toList();
+    }
+
+    private void write(Writer writer, List<AdminUserDTO> users) throws IOException {
+        for (AdminUserDTO user : users) {
+            writer.write(objectMapper.writeValueAsString(user));
+            writer.write('\n');
+        }
+    }
+
+    private String userCollection() {
+        return mongoTemplate.getCollectionName(User.class);
+    }
+}
@@ -0,0 +1,138 @@
+package com.learnpr1.journalApp.service;
+
+
+import com.learnpr1.journalApp.entity.AudioStatus;
+import com.learnpr1.journalApp.entity.JournalEntry;
+import com.learnpr1.journalApp.storage.AudioStore;
+import com.learnpr1.journalApp.storage.StoredAudio;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.Binary;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+
+// Moves the audio that entries written before the AudioStore still embed as audioFile bytes into the AudioStore
+// Those entries had no audioRef, so their audio could not be played, and every read of them still pulled the bytes
+// A background thread goes through them in batches (migration.embedded-audio.batch-size) with a pause in between
+// The entry only gets the ref if it still has its audioFile, so running it twice or from two places at once is harmless
+@Slf4j
+@Component
+public class EmbeddedAudioMigration {
+
+    private static final String AUDIO_FIELD = "audioFile";
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private AudioStore audioStore;
+
+    private final int batchSize;
+    private final long pauseMs;
+
+    private Thread runner;
+
+    public EmbeddedAudioMigration(@Value("${migration.embedded-audio.batch-size:20}") int batchSize,
+                                  @Value("${migration.embedded-audio.pause-ms:200}") long pauseMs) {
+        this.batchSize = batchSize;
+        this.pauseMs = pauseMs;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        runner = Thread.ofVirtual().name("embedded-audio-migration").start(this::migrateAll);
+    }
+
+    private void migrateAll() {
+        try {
+            long entries = 0;
+            ObjectId after = null;
+            while (true) {
+                List<Document> batch = findEmbedded(after);
+                if (batch.isEmpty()) {
+                    break;
+                }
+                for (Document entry : batch) {
+                    migrate(entry);
+                }
+                after = batch.getLast().getObjectId("_id");
+                entries += batch.size();
+                log.info("Embedded audio migration: {} entries moved so far", entries);
+                Thread.sleep(pauseMs);
+            }
+            if (entries > 0) {
+                log.info("Embedded audio migration finished, {} entries moved", entries);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            // entries left over are moved on the next start
+            log.error("Embedded audio migration stopped: {}", e.getMessage());
+        }
+    }
+
+    //Walks by _id, so an entry whose audio could not be stored is not picked up again in the same run
+    private List<Document> findEmbedded(ObjectId after) {
+        Criteria criteria = Criteria.where(AUDIO_FIELD).exists(true);
+        if (after != null) {
+            criteria.and("_id").gt(after);
+        }
+        Query query = new Query(criteria).limit(batchSize).with(Sort.by("_id"));
+        query.fields().include(AUDIO_FIELD).include("audioRef");
+        return mongoTemplate.find(query, Document.class, entryCollection());
+    }
+
+    private void migrate(Document entry) {
+        ObjectId id = entry.getObjectId("_id");
+        Object audio = entry.get(AUDIO_FIELD);
+        Query stillEmbedded = new Query(Criteria.where("_id").is(id).and(AUDIO_FIELD).exists(true));
+        if (entry.getString("audioRef") != null || !(audio instanceof Binary binary) || binary.length() == 0) {
+            // nothing playable in it, or the entry already has audio in the store
+            mongoTemplate.updateFirst(stillEmbedded, new Update().unset(AUDIO_FIELD), entryCollection());
+            return;
+        }
+        StoredAudio storedAudio;
+        try {
+            storedAudio = audioStore.store(new ByteArrayInputStream(binary.getData()), "audio/mpeg");
+        } catch (Exception e) {
+            log.warn("Could not move the audio of entry {}: {}", id, e.getMessage());
+            return;
+        }
+        Update update = new Update()
+                .set("audioRef", storedAudio.getRef())
+                .set("audioLength", storedAudio.getLength())
+                .set("audioHash", storedAudio.getSha256())
+                .set("audioStatus", AudioStatus.READY)
+                .unset(AUDIO_FIELD);
+        // a tts job may have attached new audio meanwhile, that one wins and the old bytes are dropped on the next run
+        Query withoutAudio = new Query(Criteria.where("_id").is(id).and(AUDIO_FIELD).exists(true).and("audioRef").is(null));
+        if (mongoTemplate.updateFirst(withoutAudio, update, entryCollection()).getMatchedCount() == 0) {
+            // deleted, given audio or migrated by someone else in the meantime
+            audioStore.delete(storedAudio.getRef());
+        }
+    }
+
+    private String entryCollection() {
+        return mongoTemplate.getCollectionName(JournalEntry.class);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (runner != null) {
+            runner.interrupt();
+        }
+    }
+}
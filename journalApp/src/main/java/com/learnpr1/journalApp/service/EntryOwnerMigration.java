@@ -0,0 +1,134 @@
+package com.learnpr1.journalApp.service;
+
+
+import com.learnpr1.journalApp.entity.JournalEntry;
+import com.learnpr1.journalApp.entity.User;
+import com.mongodb.DBRef;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+// Moves users off the old journalEntryList DBRef array while the app keeps running
+// For every user that still has the array, its entries get the user's ownerId and the array is removed
+// A background thread goes through the users in batches (migration.entry-owner.batch-size) with a pause in between,
+// and a user who shows up before the thread reaches them is migrated on the spot by ensureMigrated
+// Every step only touches what is not migrated yet, so running it twice or from two places at once is harmless
+@Slf4j
+@Component
+public class EntryOwnerMigration {
+
+    private static final String LIST_FIELD = "journalEntryList";
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    private final int batchSize;
+    private final long pauseMs;
+
+    // set once no user has the array any more, from then on ensureMigrated costs nothing
+    private volatile boolean done;
+    private Thread runner;
+
+    public EntryOwnerMigration(@Value("${migration.entry-owner.batch-size:100}") int batchSize,
+                               @Value("${migration.entry-owner.pause-ms:200}") long pauseMs) {
+        this.batchSize = batchSize;
+        this.pauseMs = pauseMs;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        runner = Thread.ofVirtual().name("entry-owner-migration").start(this::migrateAll);
+    }
+
+    //true once every user is migrated, callers that must not block can skip ensureMigrated then
+    public boolean isDone() {
+        return done;
+    }
+
+    //Makes sure the entries of this user carry its ownerId before they are queried by it
+    public void ensureMigrated(ObjectId userId) {
+        if (done) {
+            return;
+        }
+        Document user = findUnmigrated(Criteria.where("_id").is(userId), 1).stream().findFirst().orElse(null);
+        if (user != null) {
+            migrate(user);
+        }
+    }
+
+    private void migrateAll() {
+        try {
+            long users = 0;
+            while (true) {
+                List<Document> batch = findUnmigrated(new Criteria(), batchSize);
+                if (batch.isEmpty()) {
+                    break;
+                }
+                for (Document user : batch) {
+                    migrate(user);
+                }
+                users += batch.size();
+                log.info("Entry owner migration: {} users migrated so far", users);
+                Thread.sleep(pauseMs);
+            }
+            done = true;
+            if (users > 0) {
+                log.info("Entry owner migration finished, {} users migrated", users);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            // users left over are still migrated on their next request, and the job runs again on the next start
+            log.error("Entry owner migration stopped: {}", e.getMessage());
+        }
+    }
+
+    private List<Document> findUnmigrated(Criteria criteria, int limit) {
+        Query query = new Query(criteria.and(LIST_FIELD).exists(true)).limit(limit);
+        query.fields().include(LIST_FIELD);
+        return mongoTemplate.find(query, Document.class, userCollection());
+    }
+
+    private void migrate(Document user) {
+        ObjectId userId = user.getObjectId("_id");
+        List<DBRef> refs = user.getList(LIST_FIELD, DBRef.class, List.of());
+        if (!refs.isEmpty()) {
+            List<Object> entryIds = refs.stream().map(DBRef::getId).toList();
+            mongoTemplate.updateMulti(
+                    new Query(Criteria.where("_id").in(entryIds).and("ownerId").exists(false)),
+                    new Update().set("ownerId", userId),
+                    JournalEntry.class);
+            mongoTemplate.updateFirst(
+                    new Query(Criteria.where("_id").is(userId)),
+                    new Update().pullAll(LIST_FIELD, refs.toArray()),
+                    userCollection());
+        }
+        mongoTemplate.updateFirst(
+                new Query(Criteria.where("_id").is(userId).and(LIST_FIELD).size(0)),
+                new Update().unset(LIST_FIELD),
+                userCollection());
+    }
+
+    private String userCollection() {
+        return mongoTemplate.getCollectionName(User.class);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (runner != null) {
+            runner.interrupt();
+        }
+    }
+}
@@ -1,11 +1,16 @@
 package com.learnpr1.journalApp.service;
 
-import ch.qos.logback.core.joran.spi.HttpUtil;
 import com.learnpr1.journalApp.ApiResponse.WeatherResponse;
 import com.learnpr1.journalApp.Cache.AppCache;
+import com.learnpr1.journalApp.Cache.WeatherCache;
 import com.learnpr1.journalApp.entity.JournalEntry;
+import com.learnpr1.journalApp.http.VendorHttpClient;
 import com.learnpr1.journalApp.repositary.JournalEntryRepo;
-import com.mashape.unirest.http.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learnpr1.journalApp.storage.AudioSpill;
+import com.learnpr1.journalApp.storage.AudioStore;
+import com.learnpr1.journalApp.storage.StoredAudio;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
@@ -13,31 +18,28 @@ import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 
-
-import com.mashape.unirest.http.HttpResponse;
-import com.mashape.unirest.http.Unirest;
-import com.mashape.unirest.http.exceptions.UnirestException;
-
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.io.*;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.util.Map;
+import java.util.Objects;
 
+@Slf4j
 @Service
 @Component
 public class ExternalApiService {
 
     @Autowired
-    private RestTemplate restTemplate;
+    private VendorHttpClient weatherHttpClient;
+
+    @Autowired
+    private VendorHttpClient speechifyHttpClient;
 
     @Autowired
     private JournalEntryRepo journalEntryRepo;//Class in spring which processes http requests and gives responses
@@ -45,6 +47,19 @@ public class ExternalApiService {
     @Autowired
     private AppCache appCache; // Cache to store application configurations
 
+    @Autowired
+    private WeatherCache weatherCache;
+
+    @Autowired
+    private AudioStore audioStore;
+
+    @Autowired
+    private AudioSpill audioSpill;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+
     @Value("${weather.api.key}")
     private String weatherApiKey; // Injected from application.properties
 
@@ -52,11 +67,31 @@ public class ExternalApiService {
     public ExternalApiService() throws IOException {
     }
 
+    //Weather of the city from the WeatherCache, only goes to the api when the cached one is too old
     public WeatherResponse getWeather(String cityName) {
-        String finalAPI = appCache.APP_CACHE.get("WeatherApi") + "?access_key=" + weatherApiKey + "&query=" + cityName;
-        ResponseEntity<WeatherResponse> response = restTemplate.exchange(finalAPI, HttpMethod.GET, null, WeatherResponse.class);
-        return response.getBody();
+        return weatherCache.get(cityName, this::fetchWeather);
+    }
 
+    //Returns null when the weather api can't be reached or doesn't answer 200
+    private WeatherResponse fetchWeather(String cityName) {
+        String finalAPI = appCache.get("WeatherApi") + "?access_key=" + weatherApiKey
+                + "&query=" + URLEncoder.encode(cityName, StandardCharsets.UTF_8);
+        HttpRequest request = weatherHttpClient.request(URI.create(finalAPI)).GET().build();
+        try {
+            return weatherHttpClient.exchange(request, HttpResponse.BodyHandlers.ofByteArray(), response -> {
+                if (response.statusCode() != 200) {
+                    log.warn("Weather api answered {}", response.statusCode());
+                    return null;
+                }
+                return objectMapper.readValue(response.body(), WeatherResponse.class);
+            });
+        } catch (IOException e) {
+            log.warn("Could not get the weather for {}: {}", cityName, e.getMessage());
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
     }
 
 //     POST call
@@ -108,67 +143,50 @@ public class ExternalApiService {
 
     @Value("${speechify.api.key}")
     String speechifyApiKey; // Replace with your Speechify API key
-    public byte[] generateSpeechFile(JournalEntry journalEntry) {
-        byte[] audioBytes = null;
-        try {
-            // Escape special characters in text
-            String title = "Title."+journalEntry.getTitle().replace("\"", "\\\"").replace("\n", " ");
-            String content ="Content."+ journalEntry.getContent().replace("\"", "\\\"").replace("\n", " ");
-
-            // Create properly formatted JSON
-            String jsonBody = String.format("{\"input\": \"%s %s\", \"voice_id\": \"lisa\"}",
-                    title, content);
-
-
-
-            // Make API request with longer timeouts
-            Unirest.setTimeouts(10000, 60000); // 10s connect, 60s socket timeout
-            HttpResponse<InputStream> response = Unirest.post("https://api.sws.speechify.com//v1/audio/stream")
-                    .header("Accept", "audio/mpeg")
-                    .header("Authorization", "Bearer " + speechifyApiKey)
-                    .header("Content-Type", "application/json")
-                    .body(jsonBody)
-                    .asBinary();
 
-            if (response.getStatus() != 200) {
-                String errorMsg = new String(response.getBody().readAllBytes(), StandardCharsets.UTF_8);
-                System.out.println("Error: " + errorMsg);
-                return null;
-            }
-
-            // Read binary response completely
-            InputStream inputStream = response.getBody();
-            ByteArrayOutputStream byteOut = new ByteArrayOutputStream();
-            byte[] buffer = new byte[8192]; // Larger buffer
-            int bytesRead;
+    @Value("${speechify.api.url:https://api.sws.speechify.com/v1/audio/stream}")
+    private String speechifyApiUrl;
 
-            while ((bytesRead = inputStream.read(buffer)) != -1) {
-                byteOut.write(buffer, 0, bytesRead);
-            }
+    @Value("${speechify.voice-id:lisa}")
+    private String speechifyVoiceId;
 
-            audioBytes = byteOut.toByteArray();
+    public String getSpeechVoiceId() {
+        return speechifyVoiceId;
+    }
 
-            // Validate file size
-            if (audioBytes == null || audioBytes.length < 10000) { // Expecting at least 10KB
-                System.out.println("⚠️ Warning: Audio file too small: " +
-                        (audioBytes != null ? audioBytes.length : 0) + " bytes");
-            } else {
-                System.out.println("✅ Received " + audioBytes.length + " bytes of audio");
+    //Streams the speech of the entry straight from the http response into the AudioStore
+    //The vendor client holds its bulkhead permit till the whole clip is stored
+    public StoredAudio generateSpeechFile(JournalEntry journalEntry) throws IOException, InterruptedException {
+        String input = "Title. " + journalEntry.getTitle() + " Content. " + Objects.toString(journalEntry.getContent(), "");
+        String jsonBody = objectMapper.writeValueAsString(Map.of(
+                "input", input.replace("\n", " "),
+                "voice_id", speechifyVoiceId));
+
+        HttpRequest request = speechifyHttpClient.request(URI.create(speechifyApiUrl))
+                .header("Accept", "audio/mpeg")
+                .header("Authorization", "Bearer " + speechifyApiKey)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(jsonBody))
+                .build();
+
+        return speechifyHttpClient.exchange(request, HttpResponse.BodyHandlers.ofInputStream(), response -> {
+            if (response.statusCode() != 200) {
+                try (InputStream body = response.body()) {
+                    String errorMsg = new String(body.readNBytes(4096), StandardCharsets.UTF_8);
+                    throw new IOException("Speech service answered " + response.statusCode() + ": " + errorMsg);
+                }
             }
-
-            // Save file with proper error handling
-            SimpleDateFormat formatter = new SimpleDateFormat("yyyy-MM-dd HH-mm-ss");
-            String fileName = "C:/Users/HP/Documents/TP/TextToSpeech/" + formatter.format(new Date()) + ".mp3";
-            try (FileOutputStream fos = new FileOutputStream(fileName)) {
-                fos.write(audioBytes);
-                System.out.println("✅ File saved as: " + fileName);
+            // the spill wrapper is what gets closed, closing it also closes the body, the stores don't close their input
+            try (InputStream audio = audioSpill.wrap(response.body())) {
+                StoredAudio storedAudio = audioStore.store(audio, "audio/mpeg");
+                if (storedAudio.getLength() < 10000) { // Expecting at least 10KB
+                    log.warn("Audio file too small: {} bytes", storedAudio.getLength());
+                } else {
+                    log.info("Received {} bytes of audio", storedAudio.getLength());
+                }
+                return storedAudio;
             }
-        } catch (Exception e) {
-            System.out.println("❌ Error: " + e.getMessage());
-            e.printStackTrace();
-        }
-
-        return audioBytes;
+        });
     }
 }
 
@@ -0,0 +1,252 @@
+package com.learnpr1.journalApp.service;
+
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learnpr1.journalApp.entity.BulkImportReport;
+import com.learnpr1.journalApp.entity.JournalEntry;
+import com.learnpr1.journalApp.entity.JournalEntryLine;
+import com.learnpr1.journalApp.entity.TtsJob;
+import com.mongodb.bulk.BulkWriteError;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+// Import and export of a user's journal as NDJSON, one entry per line
+// Both sides stream: the import holds at most one batch (journal.bulk.batch-size) in memory and the export
+// writes entries as the mongo cursor returns them, so the heap use does not grow with the size of the file
+// Imported entries get their audio later, their tts jobs are inserted per batch and become due after journal.bulk.tts-delay-ms
+@Slf4j
+@Service
+public class JournalBulkService {
+
+    private static final int EOF = -1;
+    private static final int TOO_LONG = -2;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private JournalEntryService journalEntryService;
+
+    @Autowired
+    private TtsJobService ttsJobService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Value("${journal.bulk.batch-size:500}")
+    private int batchSize;
+
+    @Value("${journal.bulk.max-line-chars:1000000}")
+    private int maxLineChars;
+
+    @Value("${journal.bulk.max-errors:100}")
+    private int maxErrors;
+
+    @Value("${journal.bulk.tts-delay-ms:60000}")
+    private long ttsDelayMs;
+
+    //Reads the NDJSON line by line and inserts it batch by batch, a bad line is reported and skipped
+    //Batches are not one transaction, when the import stops half way the report tells which lines went in
+    public BulkImportReport importEntries(InputStream inputStream) throws IOException {
+        ObjectId ownerId = journalEntryService.currentOwnerId();
+        BulkImportReport report = new BulkImportReport();
+        List<JournalEntry> batch = new ArrayList<>(batchSize);
+        List<Long> batchLines = new ArrayList<>(batchSize);
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+        StringBuilder line = new StringBuilder();
+        long lineNumber = 0;
+        int length;
+        while ((length = readLine(reader, line)) != EOF) {
+            lineNumber++;
+            if (length == TOO_LONG) {
+                addError(report, lineNumber, "Line is longer than " + maxLineChars + " characters");
+                continue;
+            }
+            if (line.toString().isBlank()) {
+                continue;
+            }
+            try {
+                batch.add(toEntry(objectMapper.readValue(line.toString(), JournalEntryLine.class), ownerId));
+                batchLines.add(lineNumber);
+            } catch (JsonProcessingException | IllegalArgumentException e) {
+                addError(report, lineNumber, e.getMessage());
+                continue;
+            }
+            if (batch.size() >= batchSize && !flush(batch, batchLines, report)) {
+                return report;
+            }
+        }
+        flush(batch, batchLines, report);
+        return report;
+    }
+
+    //Streams every entry of the logged in user, oldest first, without the audio fields
+    public StreamingResponseBody exportEntries() {
+        // read the user now, the body is written after the request thread has returned
+        ObjectId ownerId = journalEntryService.currentOwnerId();
+        Query query = new Query(Criteria.where("ownerId").is(ownerId))
+                .with(Sort.by(Sort.Direction.ASC, "_id"))
+                .cursorBatchSize(batchSize);
+        query.fields().include("title", "content", "date");
+
+        return outputStream -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+            try (Stream<JournalEntry> entries = mongoTemplate.stream(query, JournalEntry.class)) {
+                Iterator<JournalEntry> iterator = entries.iterator();
+                while (iterator.hasNext()) {
+                    JournalEntry entry = iterator.next();
+                    writer.write(objectMapper.writeValueAsString(
+                            new JournalEntryLine(entry.getId().toHexString(), entry.getTitle(), entry.getContent(), entry.getDate())));
+                    writer.write('\n');
+                }
+            }
+            writer.flush();
+        };
+    }
+
+    private JournalEntry toEntry(JournalEntryLine line, ObjectId ownerId) {
+        if (line.getTitle() == null || line.getTitle().isBlank()) {
+            throw new IllegalArgumentException("title is required");
+        }
+        JournalEntry entry = new JournalEntry();
+        entry.setId(new ObjectId());
+        entry.setOwnerId(ownerId);
+        entry.setTitle(line.getTitle());
+        entry.setContent(line.getContent());
+        entry.setDate(line.getDate() != null ? line.getDate() : LocalDateTime.now());
+        return entry;
+    }
+
+    //Inserts the batch unordered, so one bad entry does not stop the rest, then queues tts for the ones that went in
+    //Returns false when the batch could not be written at all, or its jobs could not be queued, and the import has to stop
+    private boolean flush(List<JournalEntry> batch, List<Long> batchLines, BulkImportReport report) {
+        if (batch.isEmpty()) {
+            return true;
+        }
+        List<TtsJob> jobs = new ArrayList<>(batch.size());
+        for (JournalEntry entry : batch) {
+            jobs.add(ttsJobService.prepareAudio(entry, ttsDelayMs));
+        }
+
+        boolean completed = true;
+        Set<Integer> failed = new HashSet<>();
+        try {
+            mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, JournalEntry.class).insert(batch).execute();
+        } catch (BulkOperationException e) {
+            for (BulkWriteError error : e.getErrors()) {
+                failed.add(error.getIndex());
+                addError(report, batchLines.get(error.getIndex()), error.getMessage());
+            }
+        } catch (Exception e) {
+            // nothing can be said about which entries made it, so the whole batch is reported and the import stops
+            log.error("Bulk import stopped at line {}: {}", batchLines.get(0), e.getMessage());
+            addError(report, batchLines.get(0), "Batch starting at this line failed, import stopped: " + e.getMessage(), batch.size());
+            completed = false;
+            failed = null;
+        }
+
+        // after an unknown failure any entry of the batch may have gone in, so every one gets its job,
+        // the worker finishes the job of an entry that is not there without doing anything
+        List<TtsJob> queued = new ArrayList<>(jobs.size());
+        for (int i = 0; i < jobs.size(); i++) {
+            if (failed == null || !failed.contains(i)) {
+                queued.add(jobs.get(i));
+            }
+        }
+        try {
+            ttsJobService.queueJobs(queued);
+        } catch (Exception e) {
+            log.error("Bulk import could not queue the audio of the batch at line {}: {}", batchLines.get(0), e.getMessage());
+            failAudio(queued);
+            if (completed) {
+                // the entries are in, only their audio is missing, so no line is counted as failed
+                addError(report, batchLines.get(0), "Audio of the batch starting at this line could not be queued, import stopped: " + e.getMessage(), 0);
+                completed = false;
+            }
+        }
+        if (failed != null) {
+            report.setImported(report.getImported() + queued.size());
+        }
+        eventPublisher.publishEvent(new JournalEntriesChangedEvent(batch.get(0).getOwnerId()));
+        batch.clear();
+        batchLines.clear();
+        return completed;
+    }
+
+    //Last resort when the jobs are not in: the entries go FAILED rather than PENDING forever, when even that fails they
+    //are logged and stay PENDING until they are edited
+    private void failAudio(List<TtsJob> jobs) {
+        try {
+            ttsJobService.failAudio(jobs);
+        } catch (Exception e) {
+            log.error("{} imported entries are left PENDING without a tts job: {}", jobs.size(), e.getMessage());
+        }
+    }
+
+    private void addError(BulkImportReport report, long lineNumber, String message) {
+        addError(report, lineNumber, message, 1);
+    }
+
+    private void addError(BulkImportReport report, long lineNumber, String message, int failedLines) {
+        report.setFailed(report.getFailed() + failedLines);
+        if (report.getErrors().size() < maxErrors) {
+            report.getErrors().add(new BulkImportReport.LineError(lineNumber, message));
+        } else {
+            report.setErrorsTruncated(true);
+        }
+    }
+
+    //Reads one line into the builder, at most maxLineChars of it are kept, the rest of a longer line is skipped
+    //Returns the length, EOF at the end of the input or TOO_LONG
+    private int readLine(BufferedReader reader, StringBuilder line) throws IOException {
+        line.setLength(0);
+        boolean tooLong = false;
+        int c = reader.read();
+        if (c == -1) {
+            return EOF;
+        }
+        while (c != -1 && c != '\n') {
+            if (c != '\r') {
+                if (line.length() < maxLineChars) {
+                    line.append((char) c);
+                } else {
+                    tooLong = true;
+                }
+            }
+            c = reader.read();
+        }
+        return tooLong ? TOO_LONG : line.length();
+    }
+}
@@ -0,0 +1,168 @@
+package com.learnpr1.journalApp.service;
+
+
+import com.learnpr1.journalApp.entity.JournalActivityDTO;
+import com.learnpr1.journalApp.entity.JournalEntry;
+import com.learnpr1.journalApp.entity.JournalEntrySummary;
+import com.learnpr1.journalApp.entity.JournalPageDTO;
+import com.mongodb.MongoServerException;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.ConditionalOperators;
+import org.springframework.data.mongodb.core.aggregation.DateOperators;
+import org.springframework.data.mongodb.core.aggregation.StringOperators;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+// Date based views of the caller's entries, all of them run on the owner_date index of JournalEntry
+// range: the entries of a period, oldest first, page by page
+// calendar: entries per day or month, counted by mongo so a year heatmap is one small aggregation
+@Service
+public class JournalCalendarService {
+
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final int SNIPPET_LENGTH = 140;
+    private static final int MAX_CALENDAR_DAYS = 366 * 5;
+    // "unrecognized time zone identifier", a region java knows and the tz database of the mongo server doesn't
+    private static final int MONGO_UNKNOWN_TIME_ZONE = 40485;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private JournalEntryService journalEntryService;
+
+    //Entries from the start of day "from" to the end of day "to", days in timeZone (by default the zone of the server)
+    //cursor is the nextCursor of the previous page, it holds the date and id of the last entry on it
+    public ResponseEntity<?> getEntriesInRange(LocalDate from, LocalDate to, String timeZone, String cursor, int size) {
+        if (from.isAfter(to)) {
+            return new ResponseEntity<>("from is after to", HttpStatus.BAD_REQUEST);
+        }
+        ZoneId zone = zoneOf(timeZone);
+        if (zone == null) {
+            return new ResponseEntity<>("Unknown time zone " + timeZone, HttpStatus.BAD_REQUEST);
+        }
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        Criteria criteria = Criteria.where("ownerId").is(journalEntryService.currentOwnerId())
+                .and("date").gte(startOfDay(from, zone)).lt(startOfDay(to.plusDays(1), zone));
+        if (cursor != null && !cursor.isEmpty()) {
+            // keyset on (date, _id) so entries with the same date are neither skipped nor repeated
+            int split = cursor.lastIndexOf('_');
+            try {
+                LocalDateTime afterDate = LocalDateTime.parse(cursor.substring(0, split));
+                ObjectId afterId = new ObjectId(cursor.substring(split + 1));
+                criteria.orOperator(
+                        Criteria.where("date").gt(afterDate),
+                        Criteria.where("date").is(afterDate).and("_id").gt(afterId));
+            } catch (DateTimeParseException | IllegalArgumentException | IndexOutOfBoundsException e) {
+                return new ResponseEntity<>("Invalid cursor", HttpStatus.BAD_REQUEST);
+            }
+        }
+
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(criteria),
+                Aggregation.sort(Sort.by(Sort.Direction.ASC, "date", "_id")),
+                Aggregation.limit(pageSize + 1),
+                Aggregation.project("title", "date")
+                        .and(StringOperators.valueOf(ConditionalOperators.ifNull("content").then("")).substringCP(0, SNIPPET_LENGTH))
+                        .as("snippet"));
+        List<JournalEntrySummary> rows = mongoTemplate.aggregate(aggregation, JournalEntry.class, JournalEntrySummary.class).getMappedResults();
+
+        String nextCursor = null;
+        if (rows.size() > pageSize) {
+            rows = rows.subList(0, pageSize);
+            JournalEntrySummary last = rows.get(pageSize - 1);
+            nextCursor = last.getDate() + "_" + last.getId();
+        }
+        return new ResponseEntity<>(new JournalPageDTO(rows, nextCursor), HttpStatus.OK);
+    }
+
+    //Entries per day or month between from and to (both included), periods without entries are left out
+    //Days are cut in timeZone, by default the zone of the server which is the zone the dates are written in
+    public ResponseEntity<?> getCalendar(LocalDate from, LocalDate to, String granularity, String timeZone) {
+        if (from.isAfter(to)) {
+            return new ResponseEntity<>("from is after to", HttpStatus.BAD_REQUEST);
+        }
+        if (to.toEpochDay() - from.toEpochDay() > MAX_CALENDAR_DAYS) {
+            return new ResponseEntity<>("The range can be at most " + MAX_CALENDAR_DAYS + " days", HttpStatus.BAD_REQUEST);
+        }
+        String format = switch (granularity) {
+            case "day" -> "%Y-%m-%d";
+            case "month" -> "%Y-%m";
+            default -> null;
+        };
+        if (format == null) {
+            return new ResponseEntity<>("granularity must be day or month", HttpStatus.BAD_REQUEST);
+        }
+        ZoneId zone = zoneOf(timeZone);
+        String mongoZone = zone != null ? mongoZoneOf(zone) : null;
+        if (mongoZone == null) {
+            return new ResponseEntity<>("Unknown time zone " + timeZone, HttpStatus.BAD_REQUEST);
+        }
+
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("ownerId").is(journalEntryService.currentOwnerId())
+                        .and("date").gte(startOfDay(from, zone)).lt(startOfDay(to.plusDays(1), zone))),
+                // only date is read, so mongo can answer from the index without loading the entries
+                Aggregation.project()
+                        .and(DateOperators.DateToString.dateOf("date").toString(format)
+                                .withTimezone(DateOperators.Timezone.valueOf(mongoZone)))
+                        .as("period")
+                        .andExclude("_id"),
+                Aggregation.group("period").count().as("count"),
+                Aggregation.sort(Sort.Direction.ASC, "_id"),
+                Aggregation.project("count").and("period").previousOperation());
+        try {
+            List<JournalActivityDTO> activity = mongoTemplate.aggregate(aggregation, JournalEntry.class, JournalActivityDTO.class).getMappedResults();
+            return new ResponseEntity<>(activity, HttpStatus.OK);
+        } catch (DataAccessException e) {
+            if (e.getMostSpecificCause() instanceof MongoServerException mongoError && mongoError.getCode() == MONGO_UNKNOWN_TIME_ZONE) {
+                return new ResponseEntity<>("Unknown time zone " + timeZone, HttpStatus.BAD_REQUEST);
+            }
+            throw e;
+        }
+    }
+
+    //The zone of the server when none is given, null when the name is not a zone
+    private static ZoneId zoneOf(String timeZone) {
+        try {
+            return timeZone != null && !timeZone.isEmpty() ? ZoneId.of(timeZone) : ZoneId.systemDefault();
+        } catch (DateTimeException e) {
+            return null;
+        }
+    }
+
+    //The zone as mongo takes it: a fixed zone as a +HH:mm offset ("Z", "UTC", "GMT0" and "UTC+2" are all fixed),
+    //a region by its id, null for an offset with seconds which mongo has no way to write
+    private static String mongoZoneOf(ZoneId zone) {
+        ZoneId normalized = zone.normalized();
+        if (!(normalized instanceof ZoneOffset offset)) {
+            return normalized.getId();
+        }
+        int seconds = offset.getTotalSeconds();
+        if (seconds % 60 != 0) {
+            return null;
+        }
+        int minutes = Math.abs(seconds) / 60;
+        return String.format("%s%02d:%02d", seconds < 0 ? "-" : "+", minutes / 60, minutes % 60);
+    }
+
+    //Midnight of day in zone, as the server zone LocalDateTime the dates are stored in
+    private static LocalDateTime startOfDay(LocalDate day, ZoneId zone) {
+        return day.atStartOfDay(zone).withZoneSameInstant(ZoneId.systemDefault()).toLocalDateTime();
+    }
+}
@@ -0,0 +1,8 @@
+package com.learnpr1.journalApp.service;
+
+
+import org.bson.types.ObjectId;
+
+//Published when entries of a user are created, changed or deleted, after the commit listeners can rebuild what they derive from them
+public record JournalEntriesChangedEvent(ObjectId ownerId) {
+}
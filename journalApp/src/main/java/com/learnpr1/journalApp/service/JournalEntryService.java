@@ -1,62 +1,96 @@
 package com.learnpr1.journalApp.service;
 
 
+import com.learnpr1.journalApp.Cache.TtsCache;
+import com.learnpr1.journalApp.entity.AudioStatus;
+import com.learnpr1.journalApp.entity.AuthenticatedUser;
 import com.learnpr1.journalApp.entity.JournalEntry;
 import com.learnpr1.journalApp.entity.JournalEntryDTO;
-import com.learnpr1.journalApp.entity.User;
+import com.learnpr1.journalApp.entity.JournalEntryRequest;
+import com.learnpr1.journalApp.entity.JournalEntrySummary;
+import com.learnpr1.journalApp.entity.JournalPageDTO;
 import com.learnpr1.journalApp.repositary.JournalEntryRepo;
+import com.learnpr1.journalApp.storage.AudioStore;
+import io.micrometer.core.annotation.Timed;
+import lombok.extern.slf4j.Slf4j;
 import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.InputStream;
 import java.lang.constant.ConstantDesc;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
 // controller ---> service ---> repository
 
 //here we write all out business logic
+@Slf4j
 @Service
 @Component
+//every public method is timed as journal.service{class, method}
+@Timed(value = "journal.service", histogram = true)
 public class JournalEntryService {
 
+    private static final MediaType AUDIO_MPEG = MediaType.valueOf("audio/mpeg");
+
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final int SNIPPET_LENGTH = 140;
+    //Upper bound for the first page, every real ObjectId is smaller than this
+    private static final ObjectId FIRST_PAGE_CURSOR = new ObjectId("ffffffffffffffffffffffff");
+
     @Autowired      //dependency injection
     private JournalEntryRepo journalEntryRepo;
 
     @Autowired
-    private UserService userService;
+    private EntryOwnerMigration entryOwnerMigration;
 
     @Autowired
-    private ExternalApiService externalApiService;
+    private TtsJobService ttsJobService;
 
-    @Transactional
-    public ResponseEntity<JournalEntry> saveJournalEntry(JournalEntry journalEntry){
-        try {
-            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-            String username = authentication.getName();
-            User user=userService.findByUserName(username);
-            journalEntry.setDate(LocalDateTime.now());
+    @Autowired
+    private AudioStore audioStore;
 
-            byte[] audiobyte=externalApiService.generateSpeechFile(journalEntry);
-            journalEntry.setAudioFile(audiobyte);
+    @Autowired
+    private TtsCache ttsCache;
 
-            JournalEntry saved=journalEntryRepo.save(journalEntry);
-            user.getJournalEntryList().add(saved);
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
 
-            //here if we write
-            //user.setUsername(null);
-            //it will give an error means the entry will be added to our database of the journalEntries,
-            //but it will not get referenced with the user, means there will be a waste of the space
-            //so to avoid it we make it transactional means this all code will be treated as one
-            userService.saveuser(user);
+    //The entry is built here from the title and content alone, so a client can't set its id, owner or audio
+    @Transactional
+    public ResponseEntity<JournalEntry> saveJournalEntry(JournalEntryRequest request){
+        try {
+            JournalEntry journalEntry = new JournalEntry();
+            journalEntry.setTitle(request.getTitle());
+            journalEntry.setContent(request.getContent());
+            journalEntry.setDate(LocalDateTime.now());
+            journalEntry.setOwnerId(currentUserId());
+
+            // the id is set here so the tts job can point to the entry
+            journalEntry.setId(new ObjectId());
+
+            // audio comes from the tts cache or is made in the background by TtsWorker, the entry is returned right away
+            ttsJobService.requestAudioForNewEntry(journalEntry);
+            // the entry points to its owner, so linking it to the user is this one insert, the user document is not touched
+            // parallel saves from the same user do not meet on any shared document, so none of them can be lost
+            //it is still transactional so the entry and its tts job are saved as one
+            journalEntryRepo.insert(journalEntry);
+            eventPublisher.publishEvent(new JournalEntriesChangedEvent(journalEntry.getOwnerId()));
             return new ResponseEntity<>(journalEntry,HttpStatus.CREATED);
         } catch (Exception e) {
             return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
@@ -66,10 +100,7 @@ public class JournalEntryService {
 
 
     public ResponseEntity<?> getAllJournalEntries(){
-        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        String username = authentication.getName();
-        User user=userService.findByUserName(username);
-        List<JournalEntryDTO> all =user.getJournalEntryList().stream().map(JournalEntryDTO::new).collect(Collectors.toList());
+        List<JournalEntryDTO> all =journalEntryRepo.findByOwnerIdOrderByIdAsc(currentOwnerId()).stream().map(JournalEntryDTO::new).collect(Collectors.toList());
         if(!all.isEmpty()){
             return new ResponseEntity<>(all, HttpStatus.OK);
         }
@@ -81,6 +112,29 @@ public class JournalEntryService {
     }
 
 
+    //Returns one page of the user's entries (newest first) without loading the user's DBRefs or any audio
+    //cursor is the id of the last entry of the previous page, null for the first page
+    public ResponseEntity<?> getJournalEntriesPage(String cursor, int size){
+        ObjectId before = FIRST_PAGE_CURSOR;
+        if (cursor != null && !cursor.isEmpty()) {
+            if (!ObjectId.isValid(cursor)) {
+                return new ResponseEntity<>("Invalid cursor", HttpStatus.BAD_REQUEST);
+            }
+            before = new ObjectId(cursor);
+        }
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+
+        // ask for one extra row, if it comes back there is a next page
+        List<JournalEntrySummary> rows = journalEntryRepo.findSummariesBefore(currentOwnerId(), before, pageSize + 1, SNIPPET_LENGTH);
+        String nextCursor = null;
+        if (rows.size() > pageSize) {
+            rows = rows.subList(0, pageSize);
+            nextCursor = rows.get(pageSize - 1).getId();
+        }
+        return new ResponseEntity<>(new JournalPageDTO(rows, nextCursor), HttpStatus.OK);
+    }
+
+
     public Optional<JournalEntry> findObjectById(ObjectId id){
 
         return journalEntryRepo.findById(id);
@@ -89,17 +143,14 @@ public class JournalEntryService {
 
 
     public ResponseEntity<?>getJournalEntryByID(ObjectId id){
-        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        String username = authentication.getName();
-        User user = userService.findByUserName(username);
-        Optional<JournalEntry> journalEntryList=user.getJournalEntryList().stream().filter(x -> x.getId().equals(id)).findFirst();
+        Optional<JournalEntry> journalEntryList=findOwnedEntry(id);
         if(journalEntryList.isPresent()) {
             JournalEntryDTO journalEntry = new JournalEntryDTO(journalEntryList.get());
             // Convert JournalEntry to JournalEntryDTO
             return new ResponseEntity<>(journalEntry, HttpStatus.OK);
 
         }
-        return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        return new ResponseEntity<>(notOwnedStatus(id));
     }
 
 
@@ -107,23 +158,15 @@ public class JournalEntryService {
     @Transactional
     public ResponseEntity<String> deleteObjectById(ObjectId id){
         try {
-            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-            String username = authentication.getName();
-            User user = userService.findByUserName(username);
-
-            // here if we don't write the below sentence spring will still delete
-            // the old reference of the deleted id stored in the user
-            //when we will save some other entry, basically come here again
-            //But it is called as inconsistent as it deletes the reference in the next round
-            //this happens because our spring foes deep finding it Journal entry and when it sees the reference of the
-            // deleted entry if goes and finds it to be null so it deletes it by itself
-            // But if we want to delete it at the same instance we need to write the below line
-            user.getJournalEntryList().removeIf(x -> x.getId().equals(id));
-            userService.saveuser(user);
-            Optional<JournalEntry> journalEntry = findObjectById(id);
+            // there is no list in the user to clean up any more, deleting the entry is enough
+            Optional<JournalEntry> journalEntry = findOwnedEntry(id);
             if (journalEntry.isPresent()) {
                 journalEntryRepo.deleteById(id);
+                eventPublisher.publishEvent(new JournalEntriesChangedEvent(journalEntry.get().getOwnerId()));
+                deleteAudio(journalEntry.get().getAudioRef());
                 return new ResponseEntity<>("Entry Deleted", HttpStatus.OK);
+            } else if (notOwnedStatus(id) == HttpStatus.FORBIDDEN) {
+                return new ResponseEntity<>(HttpStatus.FORBIDDEN);
             } else {
                 return new ResponseEntity<>(HttpStatus.NO_CONTENT);
             }
@@ -137,19 +180,134 @@ public class JournalEntryService {
 
 
 
-    public ResponseEntity<?> updatejournalEntry(ObjectId id, JournalEntry updatedEntry){
-        JournalEntry oldEntry = journalEntryRepo.findById(id).orElse(null);
+    @Transactional
+    public ResponseEntity<?> updatejournalEntry(ObjectId id, JournalEntryRequest updatedEntry){
+        JournalEntry oldEntry = findOwnedEntry(id).orElse(null);
         if (oldEntry != null){
             oldEntry.setTitle(updatedEntry.getTitle() != null && !updatedEntry.getTitle().isEmpty() ?updatedEntry.getTitle(): oldEntry.getTitle());
             oldEntry.setContent(updatedEntry.getContent() !=null && !updatedEntry.getContent().isEmpty() ? updatedEntry.getContent(): oldEntry.getContent());
-            byte[] audiobyte=externalApiService.generateSpeechFile(oldEntry);
-            oldEntry.setAudioFile(audiobyte);
+            // same text as before costs nothing, otherwise the old audio stays playable till the new one is attached
+            ttsJobService.requestAudio(oldEntry);
             journalEntryRepo.save(oldEntry);
+            eventPublisher.publishEvent(new JournalEntriesChangedEvent(oldEntry.getOwnerId()));
             return new ResponseEntity<>("Entry updated successfully", HttpStatus.OK);
         }
+        else if (notOwnedStatus(id) == HttpStatus.FORBIDDEN) {
+            return new ResponseEntity<>("This entry belongs to another user",HttpStatus.FORBIDDEN);
+        }
         else {
             return new ResponseEntity<>("There was not such Entry",HttpStatus.NOT_FOUND);
         }
     }
-}
 
+
+
+    //Lets the client poll the text to speech of an entry after saving or updating it
+    public ResponseEntity<?> getJournalEntryAudioStatus(ObjectId id){
+        JournalEntry entry = findOwnedEntry(id).orElse(null);
+        if (entry == null) {
+            return new ResponseEntity<>(notOwnedStatus(id));
+        }
+        AudioStatus status = entry.getAudioStatus() != null ? entry.getAudioStatus() : AudioStatus.NONE;
+        return new ResponseEntity<>(Map.of("audioStatus", status, "hasAudio", entry.getAudioRef() != null), HttpStatus.OK);
+    }
+
+
+    //Streams the audio of an entry, supports a single "Range: bytes=start-end" so players can seek
+    public ResponseEntity<?> getJournalEntryAudio(ObjectId id, String rangeHeader){
+        JournalEntry entry = findOwnedEntry(id).orElse(null);
+        if (entry == null) {
+            return new ResponseEntity<>(notOwnedStatus(id));
+        }
+        if (entry.getAudioRef() == null || entry.getAudioLength() == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+
+        long length = entry.getAudioLength();
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(AUDIO_MPEG);
+        headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        long start = 0;
+        long end = length - 1;
+        HttpStatus status = HttpStatus.OK;
+        if (rangeHeader != null) {
+            try {
+                List<HttpRange> ranges = HttpRange.parseRanges(rangeHeader);
+                if (ranges.size() != 1) {
+                    throw new IllegalArgumentException("Only a single range is supported");
+                }
+                start = ranges.get(0).getRangeStart(length);
+                end = ranges.get(0).getRangeEnd(length);
+            } catch (IllegalArgumentException e) {
+                start = length; // falls into the 416 below
+            }
+            if (start >= length || start > end) {
+                headers.set(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                return new ResponseEntity<>(headers, HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+            }
+            headers.set(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+            status = HttpStatus.PARTIAL_CONTENT;
+        }
+        headers.setContentLength(end - start + 1);
+
+        String audioRef = entry.getAudioRef();
+        long skip = start;
+        long count = end - start + 1;
+        StreamingResponseBody body = outputStream -> {
+            try (InputStream inputStream = audioStore.open(audioRef)) {
+                if (inputStream == null) {
+                    return;
+                }
+                inputStream.skipNBytes(skip);
+                byte[] buffer = new byte[8192];
+                long remaining = count;
+                while (remaining > 0) {
+                    int read = inputStream.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                    if (read == -1) {
+                        break;
+                    }
+                    outputStream.write(buffer, 0, read);
+                    remaining -= read;
+                }
+            }
+        };
+        return new ResponseEntity<>(body, headers, status);
+    }
+
+
+    //The entry if it exists and belongs to the logged in user, fetched by _id and owner in one query
+    private Optional<JournalEntry> findOwnedEntry(ObjectId id) {
+        return journalEntryRepo.findByIdAndOwnerId(id, currentOwnerId());
+    }
+
+    //Only called after findOwnedEntry found nothing, tells a missing entry (404) from someone else's (403)
+    private HttpStatus notOwnedStatus(ObjectId id) {
+        return journalEntryRepo.existsById(id) ? HttpStatus.FORBIDDEN : HttpStatus.NOT_FOUND;
+    }
+
+    private ObjectId currentUserId() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return ((AuthenticatedUser) authentication.getPrincipal()).getId();
+    }
+
+    //Id of the logged in user, for reads it first makes sure the user's old entries carry the ownerId
+    ObjectId currentOwnerId() {
+        ObjectId userId = currentUserId();
+        entryOwnerMigration.ensureMigrated(userId);
+        return userId;
+    }
+
+    //Audio shared through the tts cache is kept, only audio stored before the cache existed belongs to the entry
+    //Blocking, the reactive tier calls it on a worker thread after deleting an entry
+    public void deleteAudio(String audioRef) {
+        if (audioRef == null || ttsCache.ownsAudio(audioRef)) {
+            return;
+        }
+        try {
+            audioStore.delete(audioRef);
+        } catch (Exception e) {
+            log.warn("Could not delete audio {}: {}", audioRef, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.learnpr1.journalApp.service;
+
+
+import com.learnpr1.journalApp.entity.JournalEntry;
+import com.learnpr1.journalApp.entity.JournalEntryTextMatch;
+import com.learnpr1.journalApp.entity.JournalSearchHit;
+import com.learnpr1.journalApp.entity.JournalSearchPageDTO;
+import com.learnpr1.journalApp.search.LocalSearchIndex;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Collation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.TextCriteria;
+import org.springframework.data.mongodb.core.query.TextQuery;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+// Full text search over the caller's entries, best match first
+// "mongo" uses the owner_text index of JournalEntry (stemming, phrases with "..", -word to exclude)
+// "local" uses LocalSearchIndex (prefix matching with word*), the default comes from journal.search.engine
+// The engine that answered is in the response, local falls back to mongo for users too large to index in memory
+@Service
+public class JournalSearchService {
+
+    public static final String MONGO = "mongo";
+    public static final String LOCAL = "local";
+
+    private static final int MAX_PAGE_SIZE = 100;
+    //deeper pages cost a scan of everything before them, ranked results that far down are not worth it
+    private static final int MAX_SKIP = 10_000;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private JournalEntryService journalEntryService;
+
+    @Autowired
+    private LocalSearchIndex localSearchIndex;
+
+    @Value("${journal.search.engine:" + MONGO + "}")
+    private String defaultEngine;
+
+    @Value("${journal.search.snippet-length:140}")
+    private int snippetLength;
+
+    public ResponseEntity<?> search(String queryText, String engine, int page, int size) {
+        if (queryText == null || queryText.isBlank()) {
+            return new ResponseEntity<>("q is required", HttpStatus.BAD_REQUEST);
+        }
+        String selected = engine != null && !engine.isEmpty() ? engine : defaultEngine;
+        if (!MONGO.equals(selected) && !LOCAL.equals(selected)) {
+            return new ResponseEntity<>("Unknown engine " + selected, HttpStatus.BAD_REQUEST);
+        }
+        int pageNumber = Math.max(0, page);
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        // in long, a large page would overflow to a negative skip
+        long skip = (long) pageNumber * pageSize;
+        if (skip > MAX_SKIP) {
+            return new ResponseEntity<>("Only the first " + MAX_SKIP + " hits can be paged through, refine the query", HttpStatus.BAD_REQUEST);
+        }
+        ObjectId ownerId = journalEntryService.currentOwnerId();
+
+        long started = System.nanoTime();
+        // one extra hit tells if there is a next page
+        List<JournalSearchHit> hits = LOCAL.equals(selected)
+                ? localSearchIndex.search(ownerId, queryText, (int) skip, pageSize + 1)
+                : null;
+        if (hits == null) {
+            // mongo was asked for, or the user's entries are too large for the local index
+            selected = MONGO;
+            hits = searchMongo(ownerId, queryText, skip, pageSize + 1);
+        }
+        long tookMs = (System.nanoTime() - started) / 1_000_000;
+
+        boolean hasMore = hits.size() > pageSize;
+        if (hasMore) {
+            hits = hits.subList(0, pageSize);
+        }
+        return new ResponseEntity<>(new JournalSearchPageDTO(selected, pageNumber, pageSize, hasMore, tookMs, hits), HttpStatus.OK);
+    }
+
+    private List<JournalSearchHit> searchMongo(ObjectId ownerId, String queryText, long skip, int limit) {
+        TextQuery query = TextQuery.queryText(TextCriteria.forDefaultLanguage().matching(queryText)).sortByScore();
+        query.addCriteria(Criteria.where("ownerId").is(ownerId));
+        query.fields().include("title", "content", "date");
+        // text indexes only work with the simple collation, the entries collection defaults to "en"
+        query.collation(Collation.simple()).skip(skip).limit(limit);
+        return mongoTemplate.find(query, JournalEntryTextMatch.class, mongoTemplate.getCollectionName(JournalEntry.class))
+                .stream()
+                .map(match -> new JournalSearchHit(match.getId(), match.getTitle(), match.getDate(),
+                        snippet(match.getContent()), match.getScore() != null ? match.getScore() : 0))
+                .toList();
+    }
+
+    private String snippet(String content) {
+        if (content == null) {
+            return "";
+        }
+        if (content.codePointCount(0, content.length()) <= snippetLength) {
+            return content;
+        }
+        return content.substring(0, content.offsetByCodePoints(0, snippetLength));
+    }
+}
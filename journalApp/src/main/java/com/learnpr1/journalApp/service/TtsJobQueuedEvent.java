@@ -0,0 +1,8 @@
+package com.learnpr1.journalApp.service;
+
+
+import org.bson.types.ObjectId;
+
+//Published when a tts job is saved, the worker picks it up once the transaction that queued it commits
+public record TtsJobQueuedEvent(ObjectId jobId) {
+}
@@ -0,0 +1,251 @@
+package com.learnpr1.journalApp.service;
+
+
+import com.learnpr1.journalApp.Cache.TtsCache;
+import com.learnpr1.journalApp.entity.AudioStatus;
+import com.learnpr1.journalApp.entity.JournalEntry;
+import com.learnpr1.journalApp.entity.TtsJob;
+import com.learnpr1.journalApp.repositary.JournalEntryRepo;
+import com.learnpr1.journalApp.repositary.TtsJobRepo;
+import com.learnpr1.journalApp.storage.AudioStore;
+import com.learnpr1.journalApp.storage.StoredAudio;
+import com.mongodb.client.result.UpdateResult;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Text to speech runs here, outside of the request and of the entry transaction
+// JournalEntryService only queues a job, TtsWorker claims the jobs and calls process()
+@Slf4j
+@Service
+public class TtsJobService {
+
+    @Autowired
+    private TtsJobRepo ttsJobRepo;
+
+    @Autowired
+    private JournalEntryRepo journalEntryRepo;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private ExternalApiService externalApiService;
+
+    @Autowired
+    private AudioStore audioStore;
+
+    @Autowired
+    private TtsCache ttsCache;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Value("${tts.worker.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${tts.worker.backoff-ms:2000}")
+    private long backoffMs;
+
+    @Value("${tts.worker.max-backoff-ms:300000}")
+    private long maxBackoffMs;
+
+    @Value("${tts.worker.lock-ms:300000}")
+    private long lockMs;
+
+    //Makes sure the entry gets audio for its current title and content
+    //Nothing happens when the text is the same as the audio already attached (or being made),
+    //a cache hit is attached right away, otherwise the entry goes PENDING and a job is queued
+    //Call it before saving the entry, inside the same transaction, so the job and the entry are committed together
+    public void requestAudio(JournalEntry journalEntry) {
+        if (audioIsCurrent(journalEntry)) {
+            return;
+        }
+        String key = ttsCache.keyFor(journalEntry.getTitle(), journalEntry.getContent(), externalApiService.getSpeechVoiceId());
+        journalEntry.setAudioRevision(journalEntry.getAudioRevision() + 1);
+        journalEntry.setAudioKey(key);
+
+        StoredAudio cached = ttsCache.get(key);
+        if (cached != null) {
+            journalEntry.setAudioRef(cached.getRef());
+            journalEntry.setAudioLength(cached.getLength());
+            journalEntry.setAudioHash(cached.getSha256());
+            journalEntry.setAudioStatus(AudioStatus.READY);
+            return;
+        }
+        journalEntry.setAudioStatus(AudioStatus.PENDING);
+        TtsJob job = ttsJobRepo.save(new TtsJob(journalEntry.getId(), journalEntry.getAudioRevision()));
+        eventPublisher.publishEvent(new TtsJobQueuedEvent(job.getId()));
+    }
+
+    //requestAudio for an entry that is not saved yet: whatever audio fields it came with are dropped first,
+    //so audioIsCurrent can't be satisfied by a key and status the caller computed and sent along with a ref of its own
+    public void requestAudioForNewEntry(JournalEntry journalEntry) {
+        clearAudio(journalEntry);
+        requestAudio(journalEntry);
+    }
+
+    //Resets an entry that is not saved yet to "no audio, never requested"
+    public static void clearAudio(JournalEntry journalEntry) {
+        journalEntry.setAudioRef(null);
+        journalEntry.setAudioLength(null);
+        journalEntry.setAudioHash(null);
+        journalEntry.setAudioStatus(null);
+        journalEntry.setAudioRevision(0);
+        journalEntry.setAudioKey(null);
+    }
+
+    //true when the audio attached (or being made) is for the entry's current text, only hashes, reads nothing
+    public boolean audioIsCurrent(JournalEntry journalEntry) {
+        String key = ttsCache.keyFor(journalEntry.getTitle(), journalEntry.getContent(), externalApiService.getSpeechVoiceId());
+        return key.equals(journalEntry.getAudioKey()) && journalEntry.getAudioStatus() != AudioStatus.FAILED;
+    }
+
+    //Bulk import and reactive version of requestAudio, nothing is read or written here
+    //The entry goes PENDING and its job is returned so the jobs of a whole batch can be inserted at once with queueJobs
+    //The job is due only after delayMs, and the worker still looks in the tts cache before calling the api
+    public TtsJob prepareAudio(JournalEntry journalEntry, long delayMs) {
+        journalEntry.setAudioRevision(journalEntry.getAudioRevision() + 1);
+        journalEntry.setAudioKey(ttsCache.keyFor(journalEntry.getTitle(), journalEntry.getContent(), externalApiService.getSpeechVoiceId()));
+        journalEntry.setAudioStatus(AudioStatus.PENDING);
+        TtsJob job = new TtsJob(journalEntry.getId(), journalEntry.getAudioRevision());
+        job.setNextAttemptAt(job.getCreatedAt().plusMillis(delayMs));
+        return job;
+    }
+
+    public void queueJobs(List<TtsJob> jobs) {
+        if (jobs.isEmpty()) {
+            return;
+        }
+        mongoTemplate.insert(jobs, TtsJob.class);
+    }
+
+    //For jobs that queueJobs could not insert: their entries go FAILED instead of staying PENDING with no job behind them
+    //An edit of the entry asks for audio again, like after a job that ran out of attempts
+    public void failAudio(List<TtsJob> jobs) {
+        if (jobs.isEmpty()) {
+            return;
+        }
+        List<ObjectId> entryIds = jobs.stream().map(TtsJob::getEntryId).toList();
+        Query query = new Query(Criteria.where("_id").in(entryIds).and("audioStatus").is(AudioStatus.PENDING));
+        mongoTemplate.updateMulti(query, new Update().set("audioStatus", AudioStatus.FAILED), JournalEntry.class);
+    }
+
+    //Atomically takes the next due job, a RUNNING job whose lock ran out (worker died or app restarted) is taken again
+    public TtsJob claimNext() {
+        Instant now = Instant.now();
+        Query query = new Query(new Criteria().orOperator(
+                Criteria.where("status").is(TtsJob.Status.QUEUED).and("nextAttemptAt").lte(now),
+                Criteria.where("status").is(TtsJob.Status.RUNNING).and("lockedUntil").lte(now)))
+                .with(Sort.by("nextAttemptAt"));
+        Update update = new Update()
+                .set("status", TtsJob.Status.RUNNING)
+                .set("lockedUntil", now.plusMillis(lockMs));
+        return mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true), TtsJob.class);
+    }
+
+    public void process(TtsJob job) {
+        JournalEntry entry = journalEntryRepo.findById(job.getEntryId()).orElse(null);
+        if (entry == null || entry.getAudioRevision() != job.getRevision()) {
+            // entry was deleted or edited again, a newer job takes care of it
+            finish(job, TtsJob.Status.DONE, null);
+            return;
+        }
+        try {
+            String key = ttsCache.keyFor(entry.getTitle(), entry.getContent(), externalApiService.getSpeechVoiceId());
+            // a job for the same text that is already calling the api is waited for instead of calling it again
+            StoredAudio storedAudio = ttsCache.getOrGenerate(key, () -> externalApiService.generateSpeechFile(entry));
+            // audio from the cache is shared, only audio stored before the cache existed is removed with its entry
+            String previousRef = entry.getAudioRef();
+            if (attach(job, storedAudio) && previousRef != null && !ttsCache.ownsAudio(previousRef)) {
+                deleteAudio(previousRef);
+            }
+            finish(job, TtsJob.Status.DONE, null);
+        } catch (Exception e) {
+            retryOrFail(job, e);
+        }
+    }
+
+    //Only attaches when the entry is still at the revision the audio was made for
+    private boolean attach(TtsJob job, StoredAudio storedAudio) {
+        Query query = new Query(Criteria.where("_id").is(job.getEntryId()).and("audioRevision").is(job.getRevision()));
+        Update update = new Update()
+                .set("audioRef", storedAudio.getRef())
+                .set("audioLength", storedAudio.getLength())
+                .set("audioHash", storedAudio.getSha256())
+                .set("audioStatus", AudioStatus.READY);
+        UpdateResult result = mongoTemplate.updateFirst(query, update, JournalEntry.class);
+        return result.getModifiedCount() > 0;
+    }
+
+    private void retryOrFail(TtsJob job, Exception e) {
+        int attempts = job.getAttempts() + 1;
+        log.warn("Text to speech failed for entry {} (attempt {}/{}): {}", job.getEntryId(), attempts, maxAttempts, e.getMessage());
+        if (attempts >= maxAttempts) {
+            Query query = new Query(Criteria.where("_id").is(job.getEntryId()).and("audioRevision").is(job.getRevision()));
+            mongoTemplate.updateFirst(query, new Update().set("audioStatus", AudioStatus.FAILED), JournalEntry.class);
+            job.setAttempts(attempts);
+            finish(job, TtsJob.Status.FAILED, e.getMessage());
+            return;
+        }
+        // exponential backoff with some jitter so failed jobs don't all come back at the same moment
+        long delay = Math.min(maxBackoffMs, backoffMs * (1L << Math.min(attempts - 1, 20)));
+        delay += ThreadLocalRandom.current().nextLong(delay / 4 + 1);
+        Update update = new Update()
+                .set("status", TtsJob.Status.QUEUED)
+                .set("attempts", attempts)
+                .set("nextAttemptAt", Instant.now().plus(Duration.ofMillis(delay)))
+                .set("lastError", e.getMessage())
+                .unset("lockedUntil");
+        mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(job.getId())), update, TtsJob.class);
+    }
+
+    //Jobs finished before finishedAt existed would never expire, they get one now and go a week later
+    @EventListener(ApplicationReadyEvent.class)
+    public void stampOldFinishedJobs() {
+        UpdateResult result = mongoTemplate.updateMulti(
+                new Query(Criteria.where("status").in(TtsJob.Status.DONE, TtsJob.Status.FAILED).and("finishedAt").exists(false)),
+                new Update().set("finishedAt", Instant.now()),
+                TtsJob.class);
+        if (result.getModifiedCount() > 0) {
+            log.info("{} finished tts jobs will expire in a week", result.getModifiedCount());
+        }
+    }
+
+    private void finish(TtsJob job, TtsJob.Status status, String error) {
+        Update update = new Update()
+                .set("status", status)
+                .set("attempts", job.getAttempts())
+                .set("lastError", error)
+                .set("finishedAt", Instant.now())
+                .unset("lockedUntil");
+        mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(job.getId())), update, TtsJob.class);
+    }
+
+    private void deleteAudio(String audioRef) {
+        if (audioRef == null) {
+            return;
+        }
+        try {
+            audioStore.delete(audioRef);
+        } catch (Exception e) {
+            log.warn("Could not delete audio {}: {}", audioRef, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.learnpr1.journalApp.service;
+
+
+import com.learnpr1.journalApp.entity.TtsJob;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+// Runs the queued tts jobs in the background
+// At most tts.worker.threads jobs run at the same time, each on its own virtual thread
+// Jobs are picked up right after the entry is committed, and the poll picks up retries and jobs left over from a restart
+@Slf4j
+@Component
+public class TtsWorker {
+
+    @Autowired
+    private TtsJobService ttsJobService;
+
+    private final Semaphore permits;
+
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("tts-", 0).factory());
+
+    public TtsWorker(@Value("${tts.worker.threads:4}") int threads) {
+        this.permits = new Semaphore(threads);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onJobQueued(TtsJobQueuedEvent event) {
+        executor.execute(this::drain);
+    }
+
+    @Scheduled(fixedDelayString = "${tts.worker.poll-interval-ms:2000}")
+    public void poll() {
+        drain();
+    }
+
+    private void drain() {
+        while (permits.tryAcquire()) {
+            TtsJob job;
+            try {
+                job = ttsJobService.claimNext();
+            } catch (Exception e) {
+                permits.release();
+                log.error("Could not claim a tts job: {}", e.getMessage());
+                return;
+            }
+            if (job == null) {
+                permits.release();
+                return;
+            }
+            executor.execute(() -> {
+                try {
+                    ttsJobService.process(job);
+                } catch (Exception e) {
+                    log.error("Tts job {} crashed, it will be claimed again after its lock expires", job.getId(), e);
+                } finally {
+                    permits.release();
+                }
+            });
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
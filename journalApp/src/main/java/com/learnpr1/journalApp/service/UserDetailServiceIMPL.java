@@ -1,5 +1,6 @@
 package com.learnpr1.journalApp.service;
 
+import com.learnpr1.journalApp.entity.AuthenticatedUser;
 import com.learnpr1.journalApp.entity.User;
 import com.learnpr1.journalApp.repositary.UserRepo;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -17,15 +18,10 @@ public class UserDetailServiceIMPL implements UserDetailsService {
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException{
 
-        User user = userRepo.findByUsername(username);
+        // only what security needs, the journal entries are not read
+        User user = userRepo.findCredentialsByUsername(username);
         if(user !=null){
-            UserDetails userDetails = org.springframework.security.core.userdetails.User
-                    .builder()
-                    .username(user.getUsername())
-                    .password(user.getPassword())
-                    .roles(user.getRoles().toArray(new String[0]))
-                    .build();
-            return userDetails;
+            return new AuthenticatedUser(user.getId(), user.getUsername(), user.getPassword(), user.getRoles());
         }
         throw new UsernameNotFoundException("User not found WITH USERNAME : "+username);
 
@@ -1,17 +1,25 @@
 package com.learnpr1.journalApp.service;
 
 
+import com.learnpr1.journalApp.Cache.UserDetailsCache;
 import com.learnpr1.journalApp.entity.JournalEntry;
 import com.learnpr1.journalApp.entity.User;
 import com.learnpr1.journalApp.repositary.UserRepo;
+import com.learnpr1.journalApp.security.PasswordHashingBusyException;
+import com.mongodb.client.result.UpdateResult;
+import io.micrometer.core.annotation.Timed;
 import lombok.extern.slf4j.Slf4j;
 import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Component;
 import org.springframework.stereotype.Service;
@@ -28,12 +36,22 @@ import java.util.logging.Logger;
 @Component
 
 @Slf4j
+//every public method is timed as journal.service{class, method}
+@Timed(value = "journal.service", histogram = true)
 public class UserService {
 
     @Autowired
     private UserRepo userRepo;
 
-    private static final PasswordEncoder passwordencoder=new BCryptPasswordEncoder();
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private UserDetailsCache userDetailsCache;
+
+    //BoundedPasswordEncoder, hashing runs on its own pool and not on the request thread
+    @Autowired
+    private PasswordEncoder passwordencoder;
 // Insted of it we can use @Slf4j annotation to log
     // messages, but for that we need to add lombok dependency in pom.xml
     // and also add @Slf4j annotation on top of the class
@@ -63,22 +81,13 @@ public class UserService {
         return userRepo.findByUsername(username);
     }
 
-    //Returna list of all users
-    public ResponseEntity<?> getAlluser(){
-        List<User> all =userRepo.findAll();
-        if(all != null && !all.isEmpty()){
-            return new ResponseEntity<>(all, HttpStatus.OK);
-        }
-        else{
-            return new ResponseEntity<>("There are no entries",HttpStatus.NOT_FOUND);
-        }
-    }
-
     //Creates a new user
     public ResponseEntity<User> createNewUser(User user){
         try {
             saveuserEncripted(user);
             return new ResponseEntity<>(user,HttpStatus.CREATED);
+        } catch (PasswordHashingBusyException e) {
+            return new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE);
         } catch (Exception e) {
             log.trace("Info error");
             log.debug("Debug error");
@@ -101,31 +110,39 @@ public class UserService {
 
 
     //Updates the user
+    //Only the fields that were sent are written with a single $set, the rest of the user document is never read or saved back
+    //The password is hashed only when a new one is sent (it used to hash the stored hash again on every update)
     public ResponseEntity<?> updateUser(User user) {
 
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
         String username=authentication.getName();
 
+        Update update = new Update();
+        if (user.getUsername() != null && !user.getUsername().isEmpty()) {
+            update.set("username", user.getUsername());
+        }
+        if (user.getPassword() != null && !user.getPassword().isEmpty()) {
+            try {
+                update.set("password", passwordencoder.encode(user.getPassword()));
+            } catch (PasswordHashingBusyException e) {
+                return new ResponseEntity<>("Server is busy, try again", HttpStatus.SERVICE_UNAVAILABLE);
+            }
+        }
+        if (update.getUpdateObject().isEmpty()) {
+            return new ResponseEntity<>("Nothing to update", HttpStatus.BAD_REQUEST);
+        }
 
-        // Fetch user from DB by username
-        User existingUser = userRepo.findByUsername(username);
-
-        if (existingUser != null) {
-
-
-            // Update the existing user's fields
-            existingUser.setUsername(user.getUsername() !=null && !user.getUsername().isEmpty()?user.getUsername(): existingUser.getUsername());
-            existingUser.setPassword(user.getPassword() !=null && !user.getPassword().isEmpty()?user.getPassword(): existingUser.getPassword());
-            existingUser.setJournalEntryList(user.getJournalEntryList() !=null && user.getJournalEntryList().isEmpty()?user.getJournalEntryList():existingUser.getJournalEntryList());
-
-            // Save updated user back to DB
-            saveuserEncripted(existingUser);
-            return new ResponseEntity<>("User updated successfully", HttpStatus.OK);
-
-        } else {
-            System.out.println("User not found with username: " + username);
-            return new ResponseEntity<>("User not found", HttpStatus.NOT_FOUND);
+        try {
+            UpdateResult result = mongoTemplate.updateFirst(new Query(Criteria.where("username").is(username)), update, User.class);
+            if (result.getMatchedCount() == 0) {
+                log.warn("User not found with username: {}", username);
+                return new ResponseEntity<>("User not found", HttpStatus.NOT_FOUND);
+            }
+        } catch (DuplicateKeyException e) {
+            return new ResponseEntity<>("Username already taken", HttpStatus.CONFLICT);
         }
+        userDetailsCache.evict(username);
+        return new ResponseEntity<>("User updated successfully", HttpStatus.OK);
     }
 
 
@@ -139,6 +156,7 @@ public class UserService {
         String username= authentication.getName();
         User user = userRepo.findByUsername(username);
         userRepo.delete(user);
+        userDetailsCache.evict(username);
         return new ResponseEntity<>("User Deleted successfully", HttpStatus.NO_CONTENT);
 
 
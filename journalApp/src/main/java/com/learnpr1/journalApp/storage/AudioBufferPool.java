@@ -0,0 +1,55 @@
+package com.learnpr1.journalApp.storage;
+
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+// Fixed size buffers reused for copying audio streams
+// A copy only ever holds one buffer, so memory per clip stays the same however long the clip is
+@Component
+public class AudioBufferPool {
+
+    private final int bufferSize;
+    private final BlockingQueue<byte[]> buffers;
+
+    public AudioBufferPool(@Value("${audio.buffer.size:65536}") int bufferSize,
+                           @Value("${audio.buffer.count:16}") int bufferCount) {
+        this.bufferSize = bufferSize;
+        this.buffers = new ArrayBlockingQueue<>(bufferCount);
+        for (int i = 0; i < bufferCount; i++) {
+            buffers.add(new byte[bufferSize]);
+        }
+    }
+
+    //Copies the input till the end and returns how many bytes were copied
+    public long copy(InputStream inputStream, OutputStream outputStream) throws IOException {
+        byte[] buffer = acquire();
+        try {
+            long total = 0;
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, read);
+                total += read;
+            }
+            return total;
+        } finally {
+            release(buffer);
+        }
+    }
+
+    // when every pooled buffer is in use a new one is made, it is dropped again on release
+    private byte[] acquire() {
+        byte[] buffer = buffers.poll();
+        return buffer != null ? buffer : new byte[bufferSize];
+    }
+
+    private void release(byte[] buffer) {
+        buffers.offer(buffer);
+    }
+}
@@ -0,0 +1,142 @@
+package com.learnpr1.journalApp.storage;
+
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+// Optional local copy of every generated clip, off unless tts.spill.dir is set
+// The copy is written while the clip streams into the AudioStore, once the directory
+// reaches tts.spill.max-bytes no new copies are made (the clip itself is still stored)
+@Slf4j
+@Component
+public class AudioSpill {
+
+    private static final DateTimeFormatter FILE_NAME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH-mm-ss-SSS");
+
+    private final Path directory;
+    private final long maxBytes;
+    private final AtomicLong usedBytes = new AtomicLong();
+
+    public AudioSpill(@Value("${tts.spill.dir:}") String directory,
+                      @Value("${tts.spill.max-bytes:524288000}") long maxBytes) throws IOException {
+        this.directory = directory.isBlank() ? null : Paths.get(directory);
+        this.maxBytes = maxBytes;
+        if (this.directory != null) {
+            Files.createDirectories(this.directory);
+            try (Stream<Path> files = Files.list(this.directory)) {
+                usedBytes.set(files.mapToLong(this::sizeOf).sum());
+            }
+        }
+    }
+
+    //Returns the stream as is when spilling is off or the directory is full
+    public InputStream wrap(InputStream inputStream) {
+        if (directory == null || usedBytes.get() >= maxBytes) {
+            return inputStream;
+        }
+        // the uuid keeps two clips of the same millisecond from writing into one file
+        Path file = directory.resolve(LocalDateTime.now().format(FILE_NAME) + " " + UUID.randomUUID() + ".mp3");
+        try {
+            return new SpillInputStream(inputStream, file, Files.newOutputStream(file));
+        } catch (IOException e) {
+            log.warn("Could not spill audio to {}: {}", file, e.getMessage());
+            return inputStream;
+        }
+    }
+
+    private long sizeOf(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    // writes what is read to the spill file, gives up on the copy (not on the read) when it fails or the cap is hit
+    private class SpillInputStream extends FilterInputStream {
+
+        private final Path file;
+        private OutputStream copy;
+        private long written;
+
+        SpillInputStream(InputStream inputStream, Path file, OutputStream copy) {
+            super(inputStream);
+            this.file = file;
+            this.copy = copy;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                spill(new byte[]{(byte) b}, 0, 1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                spill(buffer, offset, read);
+            }
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (copy != null) {
+                    copy.close();
+                    copy = null;
+                }
+            }
+        }
+
+        private void spill(byte[] buffer, int offset, int length) {
+            if (copy == null) {
+                return;
+            }
+            if (usedBytes.addAndGet(length) > maxBytes) {
+                usedBytes.addAndGet(-length);
+                abandon("spill directory is full");
+                return;
+            }
+            try {
+                copy.write(buffer, offset, length);
+                written += length;
+            } catch (IOException e) {
+                usedBytes.addAndGet(-length);
+                abandon(e.getMessage());
+            }
+        }
+
+        private void abandon(String reason) {
+            log.warn("Stopped spilling audio to {}: {}", file, reason);
+            try {
+                copy.close();
+                Files.deleteIfExists(file);
+            } catch (IOException ignored) {
+                // nothing else to clean up
+            }
+            usedBytes.addAndGet(-written);
+            copy = null;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.learnpr1.journalApp.storage;
+
+
+import java.io.IOException;
+import java.io.InputStream;
+
+//Keeps the audio bytes of journal entries outside the entry document
+//The entry only stores the ref returned by store() together with the length and hash
+//GridFS is used by default, set audio.store=local to keep the files on disk (handy for tests)
+public interface AudioStore {
+
+    //Reads the stream till the end and returns the ref, length and sha-256 of what was stored
+    StoredAudio store(InputStream inputStream, String contentType) throws IOException;
+
+    //Opens the stored audio from the beginning, returns null if there is nothing stored under this ref
+    InputStream open(String ref) throws IOException;
+
+    void delete(String ref);
+}
@@ -0,0 +1,53 @@
+package com.learnpr1.journalApp.storage;
+
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+//Counts and hashes the bytes while the store is reading them, so the audio is never read twice
+class DigestingInputStream extends DigestInputStream {
+
+    private long count;
+
+    DigestingInputStream(InputStream inputStream) {
+        super(inputStream, newSha256());
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b != -1) {
+            count++;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        int read = super.read(buffer, offset, length);
+        if (read > 0) {
+            count += read;
+        }
+        return read;
+    }
+
+    long getCount() {
+        return count;
+    }
+
+    String getHexDigest() {
+        return HexFormat.of().formatHex(getMessageDigest().digest());
+    }
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.learnpr1.journalApp.storage;
+
+
+import com.mongodb.client.gridfs.GridFSBucket;
+import com.mongodb.client.gridfs.GridFSBuckets;
+import com.mongodb.client.gridfs.GridFSUploadStream;
+import com.mongodb.client.gridfs.model.GridFSFile;
+import com.mongodb.client.gridfs.model.GridFSUploadOptions;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.gridfs.GridFsTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+//Stores the audio in GridFS (fs.files / fs.chunks), mongo splits it in chunks so it is never loaded as a whole
+@Component
+@ConditionalOnProperty(name = "audio.store", havingValue = "gridfs", matchIfMissing = true)
+public class GridFsAudioStore implements AudioStore {
+
+    private static final String FILE_NAME = "journal-audio";
+
+    @Autowired
+    private GridFsTemplate gridFsTemplate;
+
+    @Autowired
+    private MongoDatabaseFactory mongoDatabaseFactory;
+
+    @Autowired
+    private AudioBufferPool audioBufferPool;
+
+    // the upload stream writes every full chunk to mongo as soon as it is filled
+    @Override
+    public StoredAudio store(InputStream inputStream, String contentType) throws IOException {
+        GridFSBucket bucket = GridFSBuckets.create(mongoDatabaseFactory.getMongoDatabase());
+        GridFSUploadOptions options = new GridFSUploadOptions().metadata(new Document("_contentType", contentType));
+        DigestingInputStream digestingInputStream = new DigestingInputStream(inputStream);
+        GridFSUploadStream uploadStream = bucket.openUploadStream(FILE_NAME, options);
+        try {
+            audioBufferPool.copy(digestingInputStream, uploadStream);
+            uploadStream.close();
+        } catch (IOException | RuntimeException e) {
+            uploadStream.abort();
+            throw e;
+        }
+        ObjectId id = uploadStream.getObjectId();
+        return new StoredAudio(id.toHexString(), digestingInputStream.getCount(), digestingInputStream.getHexDigest());
+    }
+
+    @Override
+    public InputStream open(String ref) throws IOException {
+        GridFSFile file = gridFsTemplate.findOne(byRef(ref));
+        if (file == null) {
+            return null;
+        }
+        return gridFsTemplate.getResource(file).getInputStream();
+    }
+
+    @Override
+    public void delete(String ref) {
+        gridFsTemplate.delete(byRef(ref));
+    }
+
+    private Query byRef(String ref) {
+        return new Query(Criteria.where("_id").is(new ObjectId(ref)));
+    }
+}
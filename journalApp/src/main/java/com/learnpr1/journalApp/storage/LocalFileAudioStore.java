@@ -0,0 +1,80 @@
+package com.learnpr1.journalApp.storage;
+
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
+
+//Keeps every audio as a plain file in audio.store.local.dir, used for tests and local runs without GridFS
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "audio.store", havingValue = "local")
+public class LocalFileAudioStore implements AudioStore {
+
+    private final Path directory;
+
+    @Autowired
+    private AudioBufferPool audioBufferPool;
+
+    public LocalFileAudioStore(@Value("${audio.store.local.dir:${java.io.tmpdir}/journal-audio}") String directory) {
+        this.directory = Paths.get(directory);
+        try {
+            Files.createDirectories(this.directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create audio directory " + directory, e);
+        }
+    }
+
+    @Override
+    public StoredAudio store(InputStream inputStream, String contentType) throws IOException {
+        String ref = UUID.randomUUID().toString();
+        // write to a temp file first so a half written file is never visible under its ref
+        Path tempFile = Files.createTempFile(directory, ref, ".part");
+        try {
+            DigestingInputStream digestingInputStream = new DigestingInputStream(inputStream);
+            try (OutputStream outputStream = Files.newOutputStream(tempFile)) {
+                audioBufferPool.copy(digestingInputStream, outputStream);
+            }
+            Files.move(tempFile, resolve(ref), StandardCopyOption.ATOMIC_MOVE);
+            return new StoredAudio(ref, digestingInputStream.getCount(), digestingInputStream.getHexDigest());
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    @Override
+    public InputStream open(String ref) throws IOException {
+        Path file = resolve(ref);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        return Files.newInputStream(file);
+    }
+
+    @Override
+    public void delete(String ref) {
+        try {
+            Files.deleteIfExists(resolve(ref));
+        } catch (IOException e) {
+            log.warn("Could not delete audio {}: {}", ref, e.getMessage());
+        }
+    }
+
+    private Path resolve(String ref) {
+        // refs are generated by us, anything else (like ../) is rejected
+        UUID.fromString(ref);
+        return directory.resolve(ref + ".mp3");
+    }
+}
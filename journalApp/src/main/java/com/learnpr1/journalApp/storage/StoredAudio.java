@@ -0,0 +1,17 @@
+package com.learnpr1.journalApp.storage;
+
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+//What an AudioStore hands back after storing a file
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StoredAudio {
+
+    private String ref;
+    private long length;
+    private String sha256;
+}
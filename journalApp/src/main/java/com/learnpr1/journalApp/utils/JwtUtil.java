@@ -1,15 +1,28 @@
 package com.learnpr1.journalApp.utils;
 
 
+import com.learnpr1.journalApp.Cache.VerifiedTokenCache;
+import com.learnpr1.journalApp.entity.AuthenticatedUser;
+import io.jsonwebtoken.Jws;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.security.Keys;
 import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 @Component
 public class JwtUtil {
@@ -17,36 +30,98 @@ public class JwtUtil {
     @Value("${jwt.secret.key}")
     private String SECRET_KEY;
 
-    private SecretKey getSigningKey() {
-        return Keys.hmacShaKeyFor(SECRET_KEY.getBytes());
+    public static final String ROLES_CLAIM = "roles";
+    public static final String USER_ID_CLAIM = "uid";
+    public static final String TOKEN_TYPE_CLAIM = "token_type";
+    public static final String FAMILY_ID_CLAIM = "fid";
+    public static final String REFRESH_TOKEN_TYPE = "refresh";
+
+    @Autowired
+    private VerifiedTokenCache verifiedTokenCache;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // security.jwt.verify, cache=hit is a VerifiedTokenCache lookup, cache=miss a full signature check
+    private Timer cachedVerifyTimer;
+    private Timer uncachedVerifyTimer;
+
+    // the key and the parser never change, so they are built once instead of on every call
+    private SecretKey signingKey;
+    private JwtParser jwtParser;
+
+    @PostConstruct
+    public void init() {
+        signingKey = Keys.hmacShaKeyFor(SECRET_KEY.getBytes(StandardCharsets.UTF_8));
+        jwtParser = Jwts.parser()
+                .verifyWith(signingKey)
+                .build();
+        cachedVerifyTimer = Timer.builder("security.jwt.verify").tag("cache", "hit").register(meterRegistry);
+        uncachedVerifyTimer = Timer.builder("security.jwt.verify").tag("cache", "miss")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
     }
 
-    public String extractUsername(String token) {
-        Claims claims = extractAllClaims(token);
-        return claims.getSubject();
+    private SecretKey getSigningKey() {
+        return signingKey;
     }
 
-    public Date extractExpiration(String token) {
-        return extractAllClaims(token).getExpiration();
+    /**
+     * Checks the signature and expiry of an access token and returns its claims.
+     * A token that was verified before is served from the VerifiedTokenCache till it expires.
+     * Refresh tokens are refused here, so they never reach the cache or a filter.
+     *
+     * @param token JWT token to verify
+     * @return The claims of the token
+     * @throws JwtException when the token is malformed, badly signed, expired or a refresh token
+     */
+    public Claims parseVerified(String token) {
+        long start = System.nanoTime();
+        Claims claims = verifiedTokenCache.get(token);
+        if (claims != null) {
+            cachedVerifyTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return claims;
+        }
+        try {
+            Jws<Claims> jws = jwtParser.parseSignedClaims(token);
+            // a refresh token only buys new tokens at /public/refresh-token, it is not a way in
+            if (isRefreshToken(jws)) {
+                throw new JwtException("A refresh token is not an access token");
+            }
+            claims = jws.getPayload();
+            verifiedTokenCache.put(token, claims);
+            return claims;
+        } finally {
+            uncachedVerifyTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
     }
 
-    private Claims extractAllClaims(String token) {
-        return Jwts.parser()
-                .verifyWith(getSigningKey())
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
+    public String extractUsername(String token) {
+        return parseVerified(token).getSubject();
     }
 
-    private Boolean isTokenExpired(String token) {
-        return extractExpiration(token).before(new Date());
+    public Date extractExpiration(String token) {
+        return parseVerified(token).getExpiration();
     }
 
-    public String generateToken(String username) {
+    //Roles and the user id go in the token so the JwtFilter can build the principal without going to mongo
+    public String generateToken(AuthenticatedUser user) {
         Map<String, Object> claims = new HashMap<>();
         // Claims are additional information that you can add to the token
-        claims.put("roles", "User"); // Example claim, you can add more as needed
-        return createToken(claims, username);
+        claims.put(ROLES_CLAIM, user.getRoleNames());
+        claims.put(USER_ID_CLAIM, user.getId().toHexString());
+        return createToken(claims, user.getUsername());
+    }
+
+    //Builds the principal from the claims alone, returns null for tokens made before the claims were added
+    public AuthenticatedUser toPrincipal(Claims claims) {
+        Object roles = claims.get(ROLES_CLAIM);
+        String userId = claims.get(USER_ID_CLAIM, String.class);
+        if (!(roles instanceof List<?> roleList) || userId == null || !ObjectId.isValid(userId)) {
+            return null;
+        }
+        List<String> roleNames = roleList.stream().map(String::valueOf).toList();
+        return new AuthenticatedUser(new ObjectId(userId), claims.getSubject(), "", roleNames);
     }
 
     private String createToken(Map<String, Object> claims, String subject) {
@@ -61,47 +136,47 @@ public class JwtUtil {
                 .compact();
     }
 
+    //parseVerified already rejects expired tokens, so a token that parses is valid
     public Boolean validateToken(String token) {
-        return !isTokenExpired(token);
+        try {
+            parseVerified(token);
+            return true;
+        } catch (JwtException | IllegalArgumentException e) {
+            return false;
+        }
     }
 
 
-    public String generateRefreshToken( String username) {
+    //Refresh tokens are only tracked by RefreshTokenService, which decides the id, family and expiry
+    //The token_type claim and the typ header keep them from being accepted as access tokens
+    public String generateRefreshToken(String username, String tokenId, String familyId, Date issuedAt, Date expiresAt) {
         return Jwts.builder()
+                .id(tokenId)
                 .subject(username)
+                .claim(TOKEN_TYPE_CLAIM, REFRESH_TOKEN_TYPE)
+                .claim(FAMILY_ID_CLAIM, familyId)
                 .header().empty().add("typ","refresh")
                 .and()
-                .issuedAt(new Date(System.currentTimeMillis()))
-                .expiration(new Date(System.currentTimeMillis() + 1000 * 60 * 60 * 24)) // 24 hours expiration time
+                .issuedAt(issuedAt)
+                .expiration(expiresAt)
                 .signWith(getSigningKey())
                 .compact();
     }
 
-    /**
-     * Decodes the JWT token and extracts the subject (usually the username)
-     *
-     * @param token JWT token to decode
-     * @return The subject contained in the JWT
-     */
-    private String getUserNameFromToken(String token) {
-        return Jwts.parser()
-                .verifyWith(getSigningKey())
-                .build()
-                .parseSignedClaims(token)
-                .getPayload()
-                .getSubject();
-    }
-
-
-    public String returnAccessToken(String token) {
-        if (validateToken(token)) {
-            String username = getUserNameFromToken(token);
-            return generateToken(username);
+    //Checks signature and expiry like parseVerified, but not through the cache (a refresh token is used once)
+    //and only accepts refresh tokens
+    public Claims parseRefreshToken(String token) {
+        Jws<Claims> jws = jwtParser.parseSignedClaims(token);
+        if (!isRefreshToken(jws)) {
+            throw new JwtException("Not a refresh token");
         }
-        return null; // or throw an exception
+        return jws.getPayload();
     }
 
-
-
-
+    //The token_type claim marks the refresh tokens of RefreshTokenService,
+    //the older stateless ones only carry the typ header (and no roles or uid)
+    private boolean isRefreshToken(Jws<Claims> jws) {
+        return REFRESH_TOKEN_TYPE.equals(jws.getPayload().get(TOKEN_TYPE_CLAIM, String.class))
+                || REFRESH_TOKEN_TYPE.equals(jws.getHeader().getType());
+    }
 }
@@ -0,0 +1,102 @@
+package com.learnpr1.journalApp.security;
+
+import com.learnpr1.journalApp.controller.PublicController;
+import com.learnpr1.journalApp.entity.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// The busy path: a hash that can't get a bcrypt thread in time is refused and the login answers 503, not 400
+// Cost 10 takes tens of milliseconds on any machine, far longer than a 1ms timeout or than submitting a few hashes
+class BoundedPasswordEncoderTest {
+
+    private static final int PARALLEL_HASHES = 16;
+
+    private BoundedPasswordEncoder encoder;
+
+    @AfterEach
+    void shutdown() {
+        if (encoder != null) {
+            encoder.shutdown();
+        }
+    }
+
+    @Test
+    void aFullQueueRefusesTheHash() throws Exception {
+        encoder = encoder(1, 60_000);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<String>> results = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(PARALLEL_HASHES)) {
+            for (int i = 0; i < PARALLEL_HASHES; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return encoder.encode("password");
+                }));
+            }
+            start.countDown();
+        }
+        int refused = 0;
+        for (Future<String> result : results) {
+            try {
+                assertTrue(result.get().startsWith("{bcrypt}$2a$10$"));
+            } catch (ExecutionException e) {
+                assertInstanceOf(PasswordHashingBusyException.class, e.getCause());
+                refused++;
+            }
+        }
+        // one hash on the thread, one in the queue, the others can only have been refused
+        assertTrue(refused >= PARALLEL_HASHES - 2, refused + " refused");
+        assertEquals((long) refused, encoder.stats().get("rejected"));
+    }
+
+    @Test
+    void aHashThatTakesTooLongIsGivenUp() {
+        encoder = encoder(1, 1);
+        assertThrows(PasswordHashingBusyException.class, () -> encoder.matches("password", hash()));
+        assertEquals(1L, encoder.stats().get("timedOut"));
+    }
+
+    @Test
+    void loginAnswers503WhenThePasswordCheckIsBusy() throws Exception {
+        encoder = encoder(1, 1);
+        String hash = hash();
+        // stands in for the provider, which calls the encoder in the same way
+        AuthenticationManager authenticationManager = authentication -> {
+            encoder.matches(authentication.getCredentials().toString(), hash);
+            throw new IllegalStateException("the check should not have finished");
+        };
+        PublicController controller = new PublicController();
+        ReflectionTestUtils.setField(controller, "authenticationManager", authenticationManager);
+        ReflectionTestUtils.setField(controller, "loginRateLimiter", new LoginRateLimiter(10, 30, 1000));
+
+        ResponseEntity<?> response = controller.login(new User("alice", "password"), new MockHttpServletRequest());
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.getStatusCode());
+    }
+
+    private static BoundedPasswordEncoder encoder(int queue, long timeoutMs) {
+        return new BoundedPasswordEncoder(10, 250, 10, 14, 1, queue, timeoutMs, new SimpleMeterRegistry());
+    }
+
+    private static String hash() {
+        return "{bcrypt}" + new BCryptPasswordEncoder(10).encode("password");
+    }
+}
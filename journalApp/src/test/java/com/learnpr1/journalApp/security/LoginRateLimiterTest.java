@@ -0,0 +1,85 @@
+package com.learnpr1.journalApp.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// The buckets refill per minute, a test runs in milliseconds, so what a bucket holds is what it started with
+class LoginRateLimiterTest {
+
+    private static final int PARALLEL_ATTEMPTS = 64;
+
+    @Test
+    void aUsernameGetsItsBurstThenIsRefused() {
+        LoginRateLimiter limiter = new LoginRateLimiter(3, 100, 1000);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(limiter.tryAcquire("alice", "10.0.0." + i));
+        }
+        assertFalse(limiter.tryAcquire("alice", "10.0.0.9"));
+        assertTrue(limiter.tryAcquire("bob", "10.0.0.9"));
+        assertEquals(1L, limiter.stats().get("rejectedByUsername"));
+    }
+
+    @Test
+    void anAttemptRefusedByTheIpDoesNotChargeTheUsername() {
+        LoginRateLimiter limiter = new LoginRateLimiter(2, 1, 1000);
+        assertTrue(limiter.tryAcquire("alice", "10.0.0.1"));
+        assertFalse(limiter.tryAcquire("alice", "10.0.0.1"));
+        assertFalse(limiter.tryAcquire("alice", "10.0.0.1"));
+        // still one attempt left for alice from another ip
+        assertTrue(limiter.tryAcquire("alice", "10.0.0.2"));
+        assertFalse(limiter.tryAcquire("alice", "10.0.0.3"));
+        assertEquals(2L, limiter.stats().get("rejectedByIp"));
+    }
+
+    @Test
+    void parallelAttemptsNeverGetMoreThanTheBurst() throws Exception {
+        int perUser = 5;
+        LoginRateLimiter limiter = new LoginRateLimiter(perUser, 1_000_000, 1000);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> results = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(16)) {
+            for (int i = 0; i < PARALLEL_ATTEMPTS; i++) {
+                String ip = "10.0.1." + i;
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return limiter.tryAcquire("alice", ip);
+                }));
+            }
+            start.countDown();
+        }
+        int allowed = 0;
+        for (Future<Boolean> result : results) {
+            allowed += result.get() ? 1 : 0;
+        }
+        assertEquals(perUser, allowed);
+    }
+
+    @Test
+    void cleanupKeepsTheBucketsThatAreNotFull() {
+        LoginRateLimiter limiter = new LoginRateLimiter(2, 100, 1000);
+        assertTrue(limiter.tryAcquire("alice", "10.0.0.1"));
+        assertTrue(limiter.tryAcquire("alice", "10.0.0.1"));
+        limiter.cleanup();
+        assertFalse(limiter.tryAcquire("alice", "10.0.0.2"));
+    }
+
+    @Test
+    void keysPastTheLimitAreLetThrough() {
+        LoginRateLimiter limiter = new LoginRateLimiter(1, 100, 2);
+        assertTrue(limiter.tryAcquire("alice", "10.0.0.1"));
+        // the map already holds alice and her ip, bob is not tracked
+        assertTrue(limiter.tryAcquire("bob", "10.0.0.1"));
+        assertTrue(limiter.tryAcquire("bob", "10.0.0.1"));
+        assertFalse(limiter.tryAcquire("alice", "10.0.0.1"));
+    }
+}
@@ -0,0 +1,131 @@
+package com.learnpr1.journalApp.security;
+
+import com.learnpr1.journalApp.entity.AuthResponseDTO;
+import com.learnpr1.journalApp.entity.AuthenticatedUser;
+import com.learnpr1.journalApp.entity.User;
+import com.learnpr1.journalApp.repositary.UserRepo;
+import com.learnpr1.journalApp.utils.JwtUtil;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.test.web.servlet.MockMvc;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Rotation, reuse detection and logout of refresh tokens, and that no refresh token is accepted as an access token
+// Runs against a real single node replica set like the other mongo tests, the token store is a mongo collection
+// Skipped when there is no docker
+@Testcontainers(disabledWithoutDocker = true)
+@AutoConfigureMockMvc
+@SpringBootTest(properties = {
+        "jwt.secret.key=" + RefreshTokenServiceTest.SECRET_KEY,
+        "weather.api.key=test",
+        "speechify.api.key=test",
+        "speechify.api.url=http://localhost:1/audio/stream",
+        "tts.worker.poll-interval-ms=3600000"
+})
+class RefreshTokenServiceTest {
+
+    static final String SECRET_KEY = "test-secret-key-that-is-long-enough-for-hs256";
+
+    @Container
+    @ServiceConnection
+    static MongoDBContainer mongo = new MongoDBContainer("mongo:7.0");
+
+    @Autowired
+    private RefreshTokenService refreshTokenService;
+
+    @Autowired
+    private JwtUtil jwtUtil;
+
+    @Autowired
+    private UserRepo userRepo;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    private AuthenticatedUser principal;
+
+    @BeforeEach
+    void createUser() {
+        User user = new User("refresh-" + UUID.randomUUID(), "password");
+        user.setRoles(List.of("User"));
+        userRepo.save(user);
+        principal = new AuthenticatedUser(user.getId(), user.getUsername(), "", List.of("User"));
+    }
+
+    @Test
+    void aTokenIsExchangedOnlyOnce() {
+        String first = refreshTokenService.issue(principal);
+        AuthResponseDTO rotated = refreshTokenService.rotate(first);
+        assertNotEquals(first, rotated.getRefreshToken());
+        assertEquals(principal.getUsername(), jwtUtil.extractUsername(rotated.getJwt()));
+        refreshTokenService.rotate(rotated.getRefreshToken());
+    }
+
+    @Test
+    void aReplayedTokenRevokesTheFamily() {
+        String first = refreshTokenService.issue(principal);
+        AuthResponseDTO rotated = refreshTokenService.rotate(first);
+        long reuses = (long) refreshTokenService.stats().get("reuseDetected");
+
+        assertThrows(InvalidRefreshTokenException.class, () -> refreshTokenService.rotate(first));
+        assertEquals(reuses + 1, refreshTokenService.stats().get("reuseDetected"));
+        // the token handed out by the legit rotation is gone with the family
+        assertThrows(InvalidRefreshTokenException.class, () -> refreshTokenService.rotate(rotated.getRefreshToken()));
+    }
+
+    @Test
+    void logoutRevokesTheFamily() {
+        String first = refreshTokenService.issue(principal);
+        AuthResponseDTO rotated = refreshTokenService.rotate(first);
+        refreshTokenService.revoke(rotated.getRefreshToken());
+        assertThrows(InvalidRefreshTokenException.class, () -> refreshTokenService.rotate(rotated.getRefreshToken()));
+        // another login of the same user is not affected
+        refreshTokenService.rotate(refreshTokenService.issue(principal));
+    }
+
+    @Test
+    void aRefreshTokenIsRefusedAsABearerToken() throws Exception {
+        String refreshToken = refreshTokenService.issue(principal);
+        mockMvc.perform(get("/journal").header("Authorization", "Bearer " + refreshToken))
+                .andExpect(status().isForbidden());
+        mockMvc.perform(get("/journal").header("Authorization", "Bearer " + jwtUtil.generateToken(principal)))
+                .andExpect(status().isOk());
+    }
+
+    //Refresh tokens from before RefreshTokenService: only the typ header, no token_type, roles, uid or jti
+    @Test
+    void aLegacyRefreshTokenIsRefused() throws Exception {
+        long now = System.currentTimeMillis();
+        String legacyToken = Jwts.builder()
+                .subject(principal.getUsername())
+                .header().empty().add("typ", "refresh")
+                .and()
+                .issuedAt(new Date(now))
+                .expiration(new Date(now + 60_000))
+                .signWith(Keys.hmacShaKeyFor(SECRET_KEY.getBytes(StandardCharsets.UTF_8)))
+                .compact();
+
+        mockMvc.perform(get("/journal").header("Authorization", "Bearer " + legacyToken))
+                .andExpect(status().isForbidden());
+        assertThrows(InvalidRefreshTokenException.class, () -> refreshTokenService.rotate(legacyToken));
+    }
+}
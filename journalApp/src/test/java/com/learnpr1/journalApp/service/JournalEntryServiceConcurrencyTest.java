@@ -0,0 +1,88 @@
+package com.learnpr1.journalApp.service;
+
+import com.learnpr1.journalApp.entity.AuthenticatedUser;
+import com.learnpr1.journalApp.entity.JournalEntry;
+import com.learnpr1.journalApp.entity.JournalEntryRequest;
+import com.learnpr1.journalApp.entity.User;
+import com.learnpr1.journalApp.repositary.JournalEntryRepo;
+import com.learnpr1.journalApp.repositary.UserRepo;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Many entries saved at the same time by one account must all end up linked to that account
+// Runs against a real single node replica set because saveJournalEntry is transactional
+// Skipped when there is no docker, so a plain mvn test still runs everywhere
+@Testcontainers(disabledWithoutDocker = true)
+@SpringBootTest(properties = {
+        "jwt.secret.key=test-secret-key-that-is-long-enough-for-hs256",
+        "weather.api.key=test",
+        "speechify.api.key=test",
+        "speechify.api.url=http://localhost:1/audio/stream",
+        "tts.worker.poll-interval-ms=3600000"
+})
+class JournalEntryServiceConcurrencyTest {
+
+    private static final int PARALLEL_SAVES = 64;
+
+    @Container
+    @ServiceConnection
+    static MongoDBContainer mongo = new MongoDBContainer("mongo:7.0");
+
+    @Autowired
+    private JournalEntryService journalEntryService;
+
+    @Autowired
+    private JournalEntryRepo journalEntryRepo;
+
+    @Autowired
+    private UserRepo userRepo;
+
+    @Test
+    void parallelCreatesFromOneAccountAreAllKept() throws Exception {
+        User user = new User("concurrent-writer", "password");
+        userRepo.save(user);
+        AuthenticatedUser principal = new AuthenticatedUser(user.getId(), user.getUsername(), "", List.of("User"));
+
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<ResponseEntity<JournalEntry>>> results = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(16)) {
+            for (int i = 0; i < PARALLEL_SAVES; i++) {
+                String title = "entry " + i;
+                results.add(executor.submit(() -> {
+                    SecurityContextHolder.getContext().setAuthentication(
+                            new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities()));
+                    try {
+                        start.await();
+                        return journalEntryService.saveJournalEntry(new JournalEntryRequest(title, null));
+                    } finally {
+                        SecurityContextHolder.clearContext();
+                    }
+                }));
+            }
+            start.countDown();
+            for (Future<ResponseEntity<JournalEntry>> result : results) {
+                assertEquals(HttpStatus.CREATED, result.get().getStatusCode());
+            }
+        }
+
+        assertEquals(PARALLEL_SAVES, journalEntryRepo.findByOwnerIdOrderByIdAsc(user.getId()).size());
+    }
+}